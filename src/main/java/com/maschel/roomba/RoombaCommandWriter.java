@@ -0,0 +1,520 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound command pipeline of a roomba.
+ *
+ * Commands can be queued from any thread, a single writer thread drains the queue and
+ * writes all commands that were queued since its last write with one send call. This
+ * results in less system calls and (USB) serial frames per control cycle.
+ *
+ * Commands of a coalescing slot (e.g. the drive commands) replace a queued command of the
+ * same slot that has not been written yet. The queue then only contains a slot marker at
+ * the position of the first queued command, which is replaced by the latest command of
+ * that slot when it is written.
+ *
+ * Instead of a dedicated writer thread, the queue can be drained by tasks on an executor
+ * (e.g. shared by many roombas). A drain task is submitted when a command is queued and no
+ * drain task is pending, so at most one task drains the queue at a time.
+ *
+ * The queue is bounded, the overflow policy decides what happens to a command that is queued
+ * while the queue is full. Slot markers are always queued, there is at most one per slot.
+ * In executor mode a blocking sender writes the queued commands itself instead of waiting.
+ * Asynchronous commands are queued with a future, which is completed when the batch containing
+ * the command is written (or when the command is dropped).
+ */
+class RoombaCommandWriter implements Runnable {
+
+    final static Logger log = Logger.getLogger(RoombaCommandWriter.class);
+
+    private static final int INITIAL_BATCH_SIZE = 256;
+
+    // Coalescing slots
+    static final int SLOT_DRIVE     = 0;
+    static final int SLOT_MOTORS    = 1;
+    static final int SLOT_LEDS      = 2;
+
+    // Queue markers of the coalescing slots, compared by identity
+    private static final byte[][] SLOT_MARKERS = { new byte[0], new byte[0], new byte[0] };
+
+    /**
+     * Queued command of which the sender waits for completion.
+     */
+    private static final class AsyncCommand {
+        final byte[] command;
+        final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+
+        AsyncCommand(byte[] command) {
+            this.command = command;
+        }
+    }
+
+    private final RoombaJSSC roomba;
+    private final Executor executor;
+    // Contains commands (byte[]), slot markers and asynchronous commands
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicReferenceArray<byte[]> slots = new AtomicReferenceArray<byte[]>(SLOT_MARKERS.length);
+    // Command written ahead of all queued commands
+    private final AtomicReference<byte[]> urgent = new AtomicReference<byte[]>();
+
+    private volatile int capacity = Integer.MAX_VALUE;
+    private volatile RoombaOverflowPolicy overflowPolicy = RoombaOverflowPolicy.BLOCK;
+    private final AtomicInteger depth = new AtomicInteger();
+    private final ReentrantLock notFullLock = new ReentrantLock();
+    private final Condition notFull = notFullLock.newCondition();
+    private final AtomicInteger blockedSenders = new AtomicInteger();
+
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    private volatile boolean running = false;
+    private volatile Thread thread = null;
+    // Number of drain requests since the drain task started (executor mode)
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    // Held while a drain task flushes, so stop() can wait for it (executor mode)
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            int requests = 1;
+            do {
+                drainLock.lock();
+                try {
+                    flush();
+                } catch (RuntimeException ex) {
+                    // Keep draining, otherwise no new drain task is ever submitted
+                    log.error("Failed to write queued commands, error: " + ex.getMessage());
+                } finally {
+                    drainLock.unlock();
+                }
+                requests = drainRequests.addAndGet(-requests);
+            } while (requests != 0);
+        }
+    };
+
+    private byte[] batch = new byte[INITIAL_BATCH_SIZE];
+    // Futures of the asynchronous commands in the batch
+    private final List<CompletableFuture<Boolean>> completions = new ArrayList<CompletableFuture<Boolean>>();
+
+    RoombaCommandWriter(RoombaJSSC roomba) {
+        this(roomba, null);
+    }
+
+    /**
+     * Create a writer that drains the queue using tasks on the given executor.
+     * @param roomba Roomba to write to.
+     * @param executor Executor of the drain tasks, or null to use a writer thread.
+     */
+    RoombaCommandWriter(RoombaJSSC roomba, Executor executor) {
+        this.roomba = roomba;
+        this.executor = executor;
+    }
+
+    /**
+     * Check if the queue is drained by tasks on the given executor.
+     * @param executor Executor.
+     * @return True if this writer uses the executor.
+     */
+    boolean usesExecutor(Executor executor) {
+        return this.executor == executor;
+    }
+
+    /**
+     * Set the capacity of the queue and what to do when a command is queued while the queue is full.
+     * @param capacity Maximum number of queued commands.
+     * @param overflowPolicy Overflow policy.
+     */
+    void setOverflow(int capacity, RoombaOverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        signalNotFull();
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    void start() {
+        lifecycleLock.lock();
+        try {
+            if (running)
+                return;
+            running = true;
+            if (executor != null)
+                return;
+            Thread writerThread = new Thread(this, "roomba-command-writer");
+            writerThread.setDaemon(true);
+            thread = writerThread;
+            writerThread.start();
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the writer thread, commands that are still queued will be written first. In executor mode a
+     * running drain task is awaited, the remaining commands are written by the calling thread.
+     */
+    void stop() {
+        lifecycleLock.lock();
+        try {
+            if (!running)
+                return;
+            running = false;
+            signalNotFull();
+            if (executor != null) {
+                // Wait for a running drain task, a pending drain task finds an empty queue
+                drainLock.lock();
+                try {
+                    flush();
+                } finally {
+                    drainLock.unlock();
+                }
+                return;
+            }
+            final Thread writerThread = thread;
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+            // Write commands that were queued while the writer thread was stopping
+            flush();
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * Queue a command for the writer thread.
+     * @param command Command bytes, the array should not be modified after queueing.
+     */
+    void enqueue(byte[] command) {
+        offer(command, command);
+        wakeup();
+    }
+
+    /**
+     * Queue a command for the writer thread.
+     * @param command Command bytes, the array should not be modified after queueing.
+     * @return Future that completes with True when the command is written, or False when the write
+     * failed or the command is dropped.
+     */
+    CompletableFuture<Boolean> enqueueAsync(byte[] command) {
+        AsyncCommand asyncCommand = new AsyncCommand(command);
+        offer(asyncCommand, command);
+        wakeup();
+        return asyncCommand.future;
+    }
+
+    /**
+     * Queue a command that replaces a queued, not yet written, command of the same slot.
+     * @param command Command bytes, the array should not be modified after queueing.
+     * @param slot Coalescing slot (SLOT_DRIVE, SLOT_MOTORS or SLOT_LEDS).
+     */
+    void enqueue(byte[] command, int slot) {
+        if (slots.getAndSet(slot, command) == null) {
+            // No command of this slot is queued yet, markers are not subject to the capacity
+            depth.incrementAndGet();
+            queue.offer(SLOT_MARKERS[slot]);
+        }
+        wakeup();
+    }
+
+    /**
+     * Queue a command ahead of all queued commands, e.g. to stop the roomba. All queued drive commands
+     * (coalesced or not) are dropped, so they can not undo the urgent command. The urgent command is not
+     * subject to the capacity, a newer urgent command replaces it when it is not written yet.
+     * @param command Command bytes, the array should not be modified after queueing.
+     */
+    void enqueueUrgent(byte[] command) {
+        urgent.set(command);
+        slots.set(SLOT_DRIVE, null);
+        for (Object entry: queue) {
+            if (!isSlotMarker(entry) && RoombaJSSC.isDriveCommand(command(entry)) && queue.remove(entry)) {
+                depth.decrementAndGet();
+                if (entry instanceof AsyncCommand)
+                    ((AsyncCommand)entry).future.complete(false);
+            }
+        }
+        signalNotFull();
+        wakeup();
+    }
+
+    /**
+     * Queue a command, applying the overflow policy when the queue is full.
+     * @param entry Queue entry (command or asynchronous command).
+     * @param command Command bytes.
+     */
+    private void offer(Object entry, byte[] command) {
+        if (depth.get() >= capacity) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (executor != null)
+                        flushQueued();
+                    else
+                        awaitNotFull();
+                    break;
+                case DROP_OLDEST:
+                    dropOldest();
+                    break;
+                case DROP_NON_SAFETY:
+                    if (!RoombaJSSC.isSafetyCommand(command)) {
+                        dropped(entry);
+                        return;
+                    }
+                    break;
+            }
+        }
+        depth.incrementAndGet();
+        queue.offer(entry);
+    }
+
+    /**
+     * Wait until the queue is not full. When interrupted, the command is queued anyway and the interrupt
+     * status is kept.
+     */
+    private void awaitNotFull() {
+        notFullLock.lock();
+        try {
+            blockedSenders.incrementAndGet();
+            while (running && depth.get() >= capacity) {
+                notFull.await();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            blockedSenders.decrementAndGet();
+            notFullLock.unlock();
+        }
+    }
+
+    /**
+     * Write the queued commands on the calling thread (executor mode). Waiting for a drain task
+     * deadlocks when the sender runs on the executor and the drain task can not be scheduled.
+     */
+    private void flushQueued() {
+        drainLock.lock();
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Failed to write queued commands, error: " + ex.getMessage());
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Wake up senders waiting for room in the queue.
+     */
+    private void signalNotFull() {
+        if (blockedSenders.get() > 0) {
+            notFullLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                notFullLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drop the oldest queued command, slot markers are skipped.
+     */
+    private void dropOldest() {
+        for (Object entry: queue) {
+            if (!isSlotMarker(entry) && queue.remove(entry)) {
+                depth.decrementAndGet();
+                dropped(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Count a dropped command and complete its future.
+     * @param entry Queue entry.
+     */
+    private void dropped(Object entry) {
+        roomba.commandDropped();
+        if (entry instanceof AsyncCommand)
+            ((AsyncCommand)entry).future.complete(false);
+    }
+
+    private static byte[] command(Object entry) {
+        return entry instanceof AsyncCommand ? ((AsyncCommand)entry).command : (byte[])entry;
+    }
+
+    private static boolean isSlotMarker(Object entry) {
+        return entry instanceof byte[] && ((byte[])entry).length == 0;
+    }
+
+    /**
+     * Wake up the writer thread, or submit a drain task.
+     */
+    private void wakeup() {
+        if (executor != null) {
+            drain();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Submit a drain task, unless a drain task is pending or running.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() == 0)
+            executor.execute(drainTask);
+    }
+
+    /**
+     * Get the number of queued commands.
+     * @return Number of commands that are not written yet.
+     */
+    int pending() {
+        return depth.get();
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                // Keep writing, otherwise the queued commands are never sent
+                log.error("Failed to write queued commands, error: " + ex.getMessage());
+            }
+            if (queue.isEmpty() && urgent.get() == null) {
+                LockSupport.park(this);
+            }
+        }
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Failed to write queued commands, error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Write all queued commands with a single send call.
+     * <p>Note: Should only be called by a single thread at a time.</p>
+     * @return Number of bytes written.
+     */
+    int flush() {
+        Object entry = poll();
+        if (entry == null)
+            return 0;
+        Object next = poll();
+        if (next == null && !(entry instanceof AsyncCommand)) {
+            // A single command can be written as is
+            final byte[] command = (byte[])entry;
+            roomba.transmit(command);
+            return command.length;
+        }
+        int length = append(entry, 0);
+        while (next != null) {
+            length = append(next, length);
+            next = poll();
+        }
+        boolean written = false;
+        try {
+            written = roomba.transmit(batch, length);
+        } finally {
+            for (CompletableFuture<Boolean> future: completions) {
+                future.complete(written);
+            }
+            completions.clear();
+        }
+        return length;
+    }
+
+    /**
+     * Append a command to the batch buffer, the buffer grows when needed.
+     * @param entry Command bytes or asynchronous command.
+     * @param length Current length of the batch.
+     * @return New length of the batch.
+     */
+    private int append(Object entry, int length) {
+        final byte[] command;
+        if (entry instanceof AsyncCommand) {
+            command = ((AsyncCommand)entry).command;
+            completions.add(((AsyncCommand)entry).future);
+        } else {
+            command = (byte[])entry;
+        }
+        if (length + command.length > batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(batch.length * 2, length + command.length));
+        }
+        System.arraycopy(command, 0, batch, length, command.length);
+        return length + command.length;
+    }
+
+    /**
+     * Take the next command from the queue, slot markers are replaced by the latest command of the slot.
+     * @return Next command (byte[] or asynchronous command) or null if the queue is empty.
+     */
+    private Object poll() {
+        if (urgent.get() != null) {
+            final byte[] command = urgent.getAndSet(null);
+            if (command != null)
+                return command;
+        }
+        Object entry;
+        while ((entry = queue.poll()) != null) {
+            depth.decrementAndGet();
+            signalNotFull();
+            if (!isSlotMarker(entry))
+                return entry;
+            for (int slot = 0; slot < SLOT_MARKERS.length; slot++) {
+                if (entry == SLOT_MARKERS[slot]) {
+                    final byte[] latest = slots.getAndSet(slot, null);
+                    if (latest != null)
+                        return latest;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts many roombas in one JVM using a small fixed thread pool.
+ *
+ * The pool of the fleet is used by all roombas of the fleet to write (batched) commands, to schedule
+ * (asynchronous) sensor updates and to poll the sensor data of all roombas. Every roomba is used
+ * with the normal RoombaJSSC API.
+ * <p>Note: Use a transport without a thread per connection (e.g. RoombaSocketTransport or
+ * RoombaSimulator) to also receive the sensor data of all roombas with a fixed number of threads.</p>
+ */
+public class RoombaFleet implements Closeable {
+
+    final static Logger log = Logger.getLogger(RoombaFleet.class);
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private final ScheduledExecutorService executor;
+    private final List<RoombaJSSC> roombas = new CopyOnWriteArrayList<RoombaJSSC>();
+
+    // Guards the sensor polling task
+    private final ReentrantLock pollingLock = new ReentrantLock();
+    private ScheduledFuture<?> sensorPolling = null;
+
+    /**
+     * Create a fleet with a pool of 2 threads.
+     */
+    public RoombaFleet() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Create a fleet.
+     * @param threads Number of threads in the pool (min. 1)
+     * @throws IllegalArgumentException If the number of threads is smaller than 1.
+     */
+    public RoombaFleet(int threads) throws IllegalArgumentException {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be at least 1");
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "roomba-fleet-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Connect to a roomba using the given transport and add it to the fleet.
+     * @param transport Transport to communicate with the roomba.
+     * @param portId Name of the port.
+     * @return Connected roomba, or null if the connection failed.
+     */
+    public RoombaJSSC connect(RoombaTransport transport, String portId) {
+        RoombaJSSC roomba = new RoombaJSSCTransport(transport);
+        add(roomba);
+        if (!roomba.connect(portId)) {
+            remove(roomba);
+            return null;
+        }
+        return roomba;
+    }
+
+    /**
+     * Add a roomba to the fleet. From now on the roomba uses the pool of the fleet for batched
+     * writes and (asynchronous) sensor updates.
+     * @param roomba Roomba.
+     * @throws IllegalStateException If the fleet is closed.
+     */
+    public void add(RoombaJSSC roomba) throws IllegalStateException {
+        if (executor.isShutdown())
+            throw new IllegalStateException("Fleet is closed");
+        roomba.setScheduler(executor);
+        roomba.setBatchedWrites(executor);
+        roombas.add(roomba);
+    }
+
+    /**
+     * Remove a roomba from the fleet, it is not disconnected. Queued commands are written and
+     * the roomba returns to unbatched writes and the default scheduler.
+     * @param roomba Roomba.
+     */
+    public void remove(RoombaJSSC roomba) {
+        if (roombas.remove(roomba)) {
+            roomba.setBatchedWrites(false);
+            roomba.setScheduler(null);
+        }
+    }
+
+    /**
+     * Get the roombas of the fleet.
+     * @return Unmodifiable list of roombas.
+     */
+    public List<RoombaJSSC> roombas() {
+        return Collections.unmodifiableList(roombas);
+    }
+
+    /**
+     * Get the number of roombas in the fleet.
+     * @return Number of roombas.
+     */
+    public int size() {
+        return roombas.size();
+    }
+
+    /**
+     * Poll the sensor data of all connected roombas (that are not streaming) at a fixed interval,
+     * using asynchronous sensor updates. The latest sensor data is available using the sensor getters
+     * of every roomba, use awaitSensorData() to wait for new sensor data.
+     * @param intervalMillis Polling interval in milliseconds (min. 50ms), or 0 to stop polling.
+     * @throws IllegalArgumentException If the interval is not 0 and smaller than 50ms.
+     */
+    public void setSensorPolling(int intervalMillis) throws IllegalArgumentException {
+        if (intervalMillis != 0 && intervalMillis < 50)
+            throw new IllegalArgumentException("Polling interval should be at least 50ms (or 0)");
+        pollingLock.lock();
+        try {
+            if (sensorPolling != null) {
+                sensorPolling.cancel(false);
+                sensorPolling = null;
+            }
+            if (intervalMillis > 0) {
+                sensorPolling = executor.scheduleAtFixedRate(new Runnable() {
+                    public void run() {
+                        pollSensors();
+                    }
+                }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            pollingLock.unlock();
+        }
+    }
+
+    private void pollSensors() {
+        for (RoombaJSSC roomba: roombas) {
+            if (roomba.connected && !roomba.isStreaming())
+                roomba.updateSensorsAsync();
+        }
+    }
+
+    /**
+     * Stop sensor polling, disconnect all roombas and stop the thread pool.
+     */
+    public void close() {
+        setSensorPolling(0);
+        for (RoombaJSSC roomba: roombas) {
+            remove(roomba);
+            roomba.disconnect();
+        }
+        executor.shutdown();
+    }
+}
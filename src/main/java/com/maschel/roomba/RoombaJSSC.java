@@ -33,6 +33,28 @@ package com.maschel.roomba;
 import com.maschel.roomba.song.RoombaSongNote;
 import org.apache.log4j.Logger;
 
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
 /**
  * RoombaJSSC - Library for controlling a roomba using the JSSC serial library.
  *
@@ -75,13 +97,107 @@ public abstract class RoombaJSSC {
 
     final static Logger log = Logger.getLogger(RoombaJSSC.class);
 
-    boolean connected = false;
+    volatile boolean connected = false;
 
     byte[] currentSensorData = new byte[SENSOR_PACKET_ALL_SIZE];
     byte[] sensorDataBuffer = new byte[SENSOR_PACKET_ALL_SIZE];
-    int sensorDataBufferIndex = 0;
-
-    private long lastSensorUpdate = 0;
+    // Boolean sensor values of the current sensor data, packed when the data is published
+    private long sensorFlags = 0;
+    final StampedLock sensorDataLock = new StampedLock();
+
+    final RoombaRingBuffer receiveBuffer = new RoombaRingBuffer(RECEIVE_BUFFER_SIZE);
+    private volatile boolean receiveBufferReset = false;
+
+    private volatile RoombaCommandWriter commandWriter = null;
+    private final ReentrantLock commandWriterLock = new ReentrantLock();
+    private volatile boolean commandCoalescing = false;
+    private volatile int outboundCapacity = DEFAULT_OUTBOUND_CAPACITY;
+    private volatile RoombaOverflowPolicy overflowPolicy = RoombaOverflowPolicy.BLOCK;
+    private final AtomicLong droppedCommands = new AtomicLong();
+
+    private volatile boolean sensorStreaming = false;
+    private volatile int[] sensorQueryPackets = SENSOR_QUERY_ALL;
+    private final byte[] streamPacketBuffer = new byte[SENSOR_STREAM_MAX_SIZE];
+
+    private volatile long packetGapTimeout = TimeUnit.MILLISECONDS.toNanos(10);
+    private long lastReceiveTime = 0;
+    private boolean realigning = false;
+
+    // Receive statistics, only written by the receiving thread
+    private volatile long receivedPackets = 0;
+    private volatile long realignedPackets = 0;
+    private volatile long truncatedPackets = 0;
+    private volatile long discardedPackets = 0;
+
+    private volatile long lastSensorUpdate = System.nanoTime() - SENSOR_UPDATE_INTERVAL;
+    private volatile long lastSensorData = System.nanoTime();
+    private volatile long sensorWatchStart = System.nanoTime();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicReference<CompletableFuture<byte[]>> pendingSensorUpdate =
+            new AtomicReference<CompletableFuture<byte[]>>();
+    private volatile CompletableFuture<byte[]> awaitingSensorUpdate = null;
+
+    private volatile ScheduledExecutorService scheduler = null;
+
+    // Number of published sensor data packets and the number at the last sensor data request
+    private volatile long sensorDataSequence = 0;
+    private volatile long sensorRequestSequence = 0;
+    private final ReentrantLock sensorDataWaitLock = new ReentrantLock();
+    private final Condition sensorDataReceived = sensorDataWaitLock.newCondition();
+    private final AtomicInteger sensorDataWaiters = new AtomicInteger();
+
+    // OI state set by the commands, replayed after a reconnect
+    private volatile int oiMode = OI_MODE_OFF;
+    private volatile byte[] ledsCommand = null;
+    private volatile byte[] streamCommand = null;
+    private final AtomicReferenceArray<byte[]> songCommands = new AtomicReferenceArray<byte[]>(16);
+
+    // Safety reflex conditions (RoombaSensorFlags) and the direction of the last drive command
+    private volatile long safetyReflex = 0;
+    private volatile int driveDirection = DRIVE_STOPPED;
+    private final AtomicLong safetyStops = new AtomicLong();
+    private final Runnable safetyStopTask = new Runnable() {
+        public void run() {
+            transmit(SAFETY_STOP);
+        }
+    };
+
+    private volatile RoombaOdometry odometry = null;
+    // Set when a received packet contained the encoder counts, only the receiving thread writes it
+    private boolean encoderCountsReceived = false;
+
+    // Sensor listeners and the union of their events
+    private final List<SensorListenerEntry> sensorListeners = new CopyOnWriteArrayList<SensorListenerEntry>();
+    private final ReentrantLock sensorListenerLock = new ReentrantLock();
+    private volatile long sensorListenerEvents = 0;
+    // Frame passed to the sensor listeners, only used by the receiving thread
+    private final RoombaSensorFrame sensorListenerFrame = new RoombaSensorFrame();
+    private ByteBuffer sensorListenerBuffer = null;
+
+    /**
+     * Listener of sensor changes, called by the receiving thread for every sensor data packet in
+     * which one of its sensors changed. Keep the listener short, the next packet is not processed
+     * before it returns.
+     */
+    public interface SensorListener {
+        /**
+         * Called when one of the sensors of the listener changed.
+         * @param roomba Roomba that received the sensor data.
+         * @param changed Changed sensors (RoombaSensorFlags), limited to the events of the listener.
+         * @param frame Received sensor data, only valid during this call.
+         */
+        void sensorsChanged(RoombaJSSC roomba, long changed, RoombaSensorFrame frame);
+    }
+
+    private static final class SensorListenerEntry {
+        final long events;
+        final SensorListener listener;
+
+        SensorListenerEntry(long events, SensorListener listener) {
+            this.events = events;
+            this.listener = listener;
+        }
+    }
 
     public RoombaJSSC() {}
 
@@ -95,6 +211,155 @@ public abstract class RoombaJSSC {
 
     public abstract boolean send(int b);
 
+    /**
+     * Enable or disable batched writes. When enabled, commands are queued and written by a dedicated
+     * writer thread, which combines all commands that were queued since its previous write into a
+     * single write to the roomba. This reduces the number of writes per control cycle.
+     * <p>Note: When disabling batched writes all queued commands are written first.</p>
+     * @param enabled True to enable batched writes.
+     */
+    public void setBatchedWrites(boolean enabled) {
+        commandWriterLock.lock();
+        try {
+            if (enabled && commandWriter == null) {
+                RoombaCommandWriter writer = new RoombaCommandWriter(this);
+                writer.setOverflow(outboundCapacity, overflowPolicy);
+                writer.start();
+                commandWriter = writer;
+            } else if (!enabled && commandWriter != null) {
+                RoombaCommandWriter writer = commandWriter;
+                commandWriter = null;
+                writer.stop();
+            }
+        } finally {
+            commandWriterLock.unlock();
+        }
+    }
+
+    /**
+     * Enable batched writes using tasks on the given executor instead of a dedicated writer thread, e.g.
+     * to share a small thread pool between many roombas. A task is submitted when a command is queued, it
+     * combines all queued commands into a single write.
+     * @param executor Executor of the write tasks, or null to disable batched writes.
+     */
+    public void setBatchedWrites(Executor executor) {
+        commandWriterLock.lock();
+        try {
+            if (commandWriter != null && executor != null && commandWriter.usesExecutor(executor))
+                return;
+            if (commandWriter != null) {
+                RoombaCommandWriter writer = commandWriter;
+                commandWriter = null;
+                writer.stop();
+            }
+            if (executor != null) {
+                RoombaCommandWriter writer = new RoombaCommandWriter(this, executor);
+                writer.setOverflow(outboundCapacity, overflowPolicy);
+                writer.start();
+                commandWriter = writer;
+            }
+        } finally {
+            commandWriterLock.unlock();
+        }
+    }
+
+    /**
+     * Check if batched writes are enabled.
+     * @return True if commands are written by the writer thread.
+     */
+    public boolean isBatchedWrites() {
+        return commandWriter != null;
+    }
+
+    /**
+     * Enable or disable command coalescing. When enabled, a drive (drive, driveDirect, drivePWM),
+     * motor (motors, motorsPWM) or LED (leds, relativeLeds) command replaces a queued command of the
+     * same kind that has not been written yet, only the latest command is written to the roomba.
+     * The command is written at the position of the command it replaced.
+     * <p>Note: Commands are only queued with batched writes, enabling coalescing enables batched writes.</p>
+     * @param enabled True to enable command coalescing.
+     */
+    public void setCommandCoalescing(boolean enabled) {
+        if (enabled) {
+            setBatchedWrites(true);
+        }
+        commandCoalescing = enabled;
+    }
+
+    /**
+     * Check if command coalescing is enabled.
+     * @return True if superseded drive, motor and LED commands are replaced.
+     */
+    public boolean isCommandCoalescing() {
+        return commandCoalescing;
+    }
+
+    /**
+     * Set the capacity of the outbound command queue (see setBatchedWrites) and what to do when a
+     * command is sent while the queue is full. By default the queue holds 256 commands and the
+     * sender blocks until there is room.
+     * <p>Note: Coalesced drive, motor and LED commands are always queued, they replace each other.</p>
+     * @param capacity Maximum number of queued commands (&gt; 0).
+     * @param overflowPolicy BLOCK the sender, DROP_OLDEST queued command or DROP_NON_SAFETY commands.
+     * @throws IllegalArgumentException When the capacity is not positive or the policy is null.
+     */
+    public void setOutboundQueue(int capacity, RoombaOverflowPolicy overflowPolicy) {
+        // Validate argument values
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be at least 1");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy should not be null");
+        }
+        commandWriterLock.lock();
+        try {
+            this.outboundCapacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+            if (commandWriter != null) {
+                commandWriter.setOverflow(capacity, overflowPolicy);
+            }
+        } finally {
+            commandWriterLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of commands in the outbound command queue that are not written yet.
+     * @return Queue depth, 0 if batched writes are disabled.
+     */
+    public int outboundQueueDepth() {
+        final RoombaCommandWriter writer = commandWriter;
+        return writer != null ? writer.pending() : 0;
+    }
+
+    /**
+     * Send a command to the roomba without waiting for the write. The command is queued for the
+     * writer thread, the returned future completes when the command is written.
+     * <p>Note: This enables batched writes. With the BLOCK overflow policy this method blocks
+     * while the outbound queue is full.</p>
+     * @param bytes Command bytes, the array should not be modified after sending.
+     * @return Future that completes with True when the command is written, or False when the
+     * write failed or the command was dropped by the overflow policy.
+     * @throws IllegalArgumentException When the command is empty.
+     */
+    public CompletableFuture<Boolean> sendAsync(byte[] bytes) {
+        // Validate argument values
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("Command should contain at least one byte");
+        }
+        return commandWriter().enqueueAsync(bytes);
+    }
+
+    /**
+     * Send a single byte command to the roomba without waiting for the write (see sendAsync(byte[])).
+     * @param b Command byte.
+     * @return Future that completes with True when the command is written, or False when the
+     * write failed or the command was dropped by the overflow policy.
+     */
+    public CompletableFuture<Boolean> sendAsync(int b) {
+        return commandWriter().enqueueAsync(SINGLE_BYTE_COMMANDS[b & 0xff]);
+    }
+
 
     //region Roomba basic power commands
 
@@ -104,7 +369,8 @@ public abstract class RoombaJSSC {
      */
     public void start() {
         log.info("Sending 'start' command to roomba.");
-        send(OPC_START);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_START);
     }
 
     /**
@@ -116,7 +382,8 @@ public abstract class RoombaJSSC {
     public void startup() {
         log.info("Sending 'startup' and 'safeMode' command to roomba.");
         byte cmd[] = { (byte)OPC_START, (byte)OPC_SAFE };
-        send(cmd);
+        oiMode = OI_MODE_SAFE;
+        sendCommand(cmd);
     }
 
     /**
@@ -125,7 +392,11 @@ public abstract class RoombaJSSC {
      */
     public void stop() {
         log.info("Sending 'stop' command to roomba.");
-        send(OPC_STOP);
+        sensorStreaming = false;
+        streamCommand = null;
+        oiMode = OI_MODE_OFF;
+        sendCommand(OPC_STOP);
+        driveDirection = DRIVE_STOPPED;
     }
 
     /**
@@ -134,7 +405,8 @@ public abstract class RoombaJSSC {
      */
     public void powerOff() {
         log.info("Sending 'powerOff' command to roomba.");
-        send(OPC_POWER);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_POWER);
     }
 
     /**
@@ -151,7 +423,10 @@ public abstract class RoombaJSSC {
      */
     public void hardReset() {
         log.info("Sending 'hardReset' command to roomba.");
-        send(OPC_RESET);
+        sensorStreaming = false;
+        streamCommand = null;
+        oiMode = OI_MODE_OFF;
+        sendCommand(OPC_RESET);
     }
 
     //endregion
@@ -165,7 +440,8 @@ public abstract class RoombaJSSC {
      */
     public void safeMode() {
         log.info("Sending 'safe' command to roomba.");
-        send(OPC_SAFE);
+        oiMode = OI_MODE_SAFE;
+        sendCommand(OPC_SAFE);
     }
 
     /**
@@ -176,7 +452,8 @@ public abstract class RoombaJSSC {
      */
     public void fullMode() {
         log.info("Sending 'full' command to roomba.");
-        send(OPC_FULL);
+        oiMode = OI_MODE_FULL;
+        sendCommand(OPC_FULL);
     }
 
     //endregion
@@ -189,7 +466,8 @@ public abstract class RoombaJSSC {
      */
     public void clean() {
         log.info("Sending 'clean' command to roomba.");
-        send(OPC_CLEAN);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_CLEAN);
     }
 
     /**
@@ -198,7 +476,8 @@ public abstract class RoombaJSSC {
      */
     public void cleanMax() {
         log.info("Sending 'cleanMax' command to roomba.");
-        send(OPC_MAX_CLEAN);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_MAX_CLEAN);
     }
 
     /**
@@ -207,7 +486,8 @@ public abstract class RoombaJSSC {
      */
     public void cleanSpot() {
         log.info("Sending 'cleanSpot' command to roomba.");
-        send(OPC_SPOT);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_SPOT);
     }
 
     /**
@@ -217,7 +497,8 @@ public abstract class RoombaJSSC {
      */
     public void seekDock() {
         log.info("Sending 'seekDock' command to roomba.");
-        send(OPC_FORCE_SEEKING_DOCK);
+        oiMode = OI_MODE_PASSIVE;
+        sendCommand(OPC_FORCE_SEEKING_DOCK);
     }
 
     /**
@@ -252,8 +533,8 @@ public abstract class RoombaJSSC {
 
         // Validate argument values
         if ((sun_hour < 0 || sun_hour > 23) || (mon_hour < 0 || mon_hour > 23) || (tue_hour < 0 || tue_hour > 23)
-                || (wed_hour < 0 || wed_hour > 23) || (thu_hour < 0 || thu_hour > 23)  || (fri_hour < 0 || fri_hour > 23)
-                || (sat_hour < 0 || sat_hour > 23)) {
+                || (wed_hour < 0 || wed_hour > 23) || (thu_hour < 0 || thu_hour > 23)
+                || (fri_hour < 0 || fri_hour > 23) || (sat_hour < 0 || sat_hour > 23)) {
             throw new IllegalArgumentException("Scheduled hours should be between 0 and 23");
         }
         if ((sun_min < 0 || sun_min > 59) || (mon_min < 0 || mon_min > 59) || (tue_min < 0 || tue_min > 59)
@@ -270,7 +551,7 @@ public abstract class RoombaJSSC {
                             (thu?SCHEDULE_THURSDAY_MASK:0) |(fri?SCHEDULE_FRIDAY_MASK:0) |
                             (sat?SCHEDULE_SATURDAY_MASK:0));
 
-        send(new byte[] {
+        sendCommand(new byte[] {
                 (byte)OPC_SCHEDULE, days,
                 (byte)sun_hour, (byte)sun_min,
                 (byte)mon_hour, (byte)mon_min,
@@ -300,7 +581,7 @@ public abstract class RoombaJSSC {
             throw new IllegalArgumentException("Minute should be between 0 and 59");
 
         log.info("Setting time of roomba to: day='" + day + "', time='" + hour + ":" + minute + "'.");
-        send(new byte[] { (byte)OPC_SET_DAYTIME, (byte)day, (byte)hour, (byte)minute });
+        sendCommand(new byte[] { (byte)OPC_SET_DAYTIME, (byte)day, (byte)hour, (byte)minute });
     }
 
     //endregion
@@ -337,7 +618,9 @@ public abstract class RoombaJSSC {
         byte[] cmd = { (byte)OPC_DRIVE, (byte)(velocity >>> 8), (byte)velocity,
                         (byte)(radius >>> 8), (byte)radius
         };
-        send(cmd);
+        driveDirection = velocity == 0 ? DRIVE_STOPPED :
+                (velocity > 0 && radius != 1 && radius != -1 ? DRIVE_FORWARD : DRIVE_OTHER);
+        sendCommand(cmd, RoombaCommandWriter.SLOT_DRIVE);
     }
 
     /**
@@ -358,7 +641,8 @@ public abstract class RoombaJSSC {
         byte[] cmd = { (byte)OPC_DRIVE_WHEELS, (byte)(rightVelocity >>> 8), (byte)rightVelocity,
                         (byte)(leftVelocity >>> 8), (byte)leftVelocity
         };
-        send(cmd);
+        driveDirection = driveDirection(rightVelocity, leftVelocity);
+        sendCommand(cmd, RoombaCommandWriter.SLOT_DRIVE);
     }
 
     /**
@@ -381,7 +665,8 @@ public abstract class RoombaJSSC {
         byte[] cmd = { (byte)OPC_DRIVE_PWM, (byte)(relRightPWM >>> 8), (byte)relRightPWM,
                         (byte)(relLeftPWM >>> 8), (byte)relLeftPWM
         };
-        send(cmd);
+        driveDirection = driveDirection(rightPWM, leftPWM);
+        sendCommand(cmd, RoombaCommandWriter.SLOT_DRIVE);
     }
 
     /**
@@ -405,7 +690,7 @@ public abstract class RoombaJSSC {
                             (mainBrush?MOTORS_MAIN_BRUSH_MASK:0) | (sideBrushClockwise?MOTORS_SIDE_BRUSH_CW_MASK:0) |
                             (mainBrushOutward?MOTORS_MAIN_BRUSH_OW_MASK:0));
         byte[] cmd = { (byte)OPC_MOTORS, motors };
-        send(cmd);
+        sendCommand(cmd, RoombaCommandWriter.SLOT_MOTORS);
     }
 
     /**
@@ -433,7 +718,7 @@ public abstract class RoombaJSSC {
         int relSideBrushPWM = MOTORS_MAX_POWER * sideBrushPWM / 100;
         int relVacuumPWM    = MOTORS_MAX_POWER * vacuumPWM / 100;
         byte[] cmd = { (byte)OPC_PWM_MOTORS, (byte)relMainBrushPWM, (byte)relSideBrushPWM, (byte)relVacuumPWM };
-        send(cmd);
+        sendCommand(cmd, RoombaCommandWriter.SLOT_MOTORS);
     }
 
     /**
@@ -465,7 +750,8 @@ public abstract class RoombaJSSC {
         int relPowerRedColor = LEDS_POWER_RED_COLOR * powerColor / 100;
         int relPowerIntensity = LEDS_POWER_MAX_INTENSITY * powerIntensity / 100;
         byte[] cmd = { (byte)OPC_LEDS, LEDs, (byte)relPowerRedColor, (byte)relPowerIntensity };
-        send(cmd);
+        ledsCommand = cmd;
+        sendCommand(cmd, RoombaCommandWriter.SLOT_LEDS);
     }
 
     /**
@@ -495,7 +781,8 @@ public abstract class RoombaJSSC {
         byte LEDs = (byte)((debris?LEDS_DEBRIS_MASK:0) | (spot?LEDS_SPOT_MASK:0) | (dock?LEDS_DOCK_MASK:0) |
                 (check_robot?LEDS_CHECK_ROBOT_MASK:0));
         byte[] cmd = { (byte)OPC_LEDS, LEDs, (byte)powerColor, (byte)powerIntensity };
-        send(cmd);
+        ledsCommand = cmd;
+        sendCommand(cmd, RoombaCommandWriter.SLOT_LEDS);
     }
 
     /**
@@ -528,7 +815,7 @@ public abstract class RoombaJSSC {
                                     (am?LEDS_SCHEDULE_AM_MASK:0) | (clock?LEDS_SCHEDULE_CLOCK_MASK:0) |
                                     (schedule?LEDS_SCHEDULE_SCHEDULE_MASK:0));
         byte[] cmd = { (byte)OPC_SCHEDULING_LEDS, weekdayLEDs, schedulingLEDs };
-        send(cmd);
+        sendCommand(cmd);
     }
 
     /**
@@ -557,7 +844,7 @@ public abstract class RoombaJSSC {
         log.info("Sending 'digitLedsAscii' command with chars: " + char0 + ", " + char1 + ", " + char2 + ", "
                 + char3 + " to roomba.");
         byte[] cmd = { (byte)OPC_DIGIT_LEDS_ASCII, (byte)char0, (byte)char1, (byte)char2, (byte)char3 };
-        send(cmd);
+        sendCommand(cmd);
     }
 
     /**
@@ -581,7 +868,7 @@ public abstract class RoombaJSSC {
                             (minute?BUTTONS_MINUTE_MASK:0) | (hour?BUTTONS_HOUR_MASK:0) | (day?BUTTONS_DAY_MASK:0) |
                             (schedule?BUTTONS_SCHEDULE_MASK:0) | (clock?BUTTONS_CLOCK_MASK:0));
         byte[] cmd = { (byte)OPC_BUTTONS, buttons };
-        send(cmd);
+        sendCommand(cmd);
     }
 
     /**
@@ -610,7 +897,8 @@ public abstract class RoombaJSSC {
         cmd[1] = (byte)songNumber;
         cmd[2] = (byte)notes.length;
         System.arraycopy(RoombaSongNote.songNotesToBytes(notes, tempo), 0, cmd, notes_offset, notes.length*2);
-        send(cmd);
+        songCommands.set(songNumber, cmd);
+        sendCommand(cmd);
     }
 
     /**
@@ -627,7 +915,7 @@ public abstract class RoombaJSSC {
 
         log.info("Sending 'play' command, song number: " + songNumber + " to roomba.");
         byte[] cmd = { (byte)OPC_PLAY, (byte)songNumber };
-        send(cmd);
+        sendCommand(cmd);
     }
 
     //endregion
@@ -641,32 +929,809 @@ public abstract class RoombaJSSC {
      * @throws RuntimeException If sensor data updates are requested more than once per 50ms.
      */
     public void updateSensors() throws RuntimeException {
+        beginSensorUpdate(SENSOR_QUERY_ALL);
+
+        log.debug("Requesting new sensor data.");
+        byte[] cmd = { (byte)OPC_QUERY, (byte)SENSOR_PACKET_ALL };
+        sendCommand(cmd);
+    }
+
+    /**
+     * This command requests new sensor data from the roomba without blocking. When sensor data was requested
+     * less than 50ms ago the request is scheduled at the earliest allowed moment, instead of throwing an exception.
+     * Callers that request sensor data before the pending request is completed share that request.
+     * While sensor data is streamed, no request is sent and the future completes with the next stream packet.
+     * <p>Note: Dependent actions of the returned future are executed by the receiving thread, use the async
+     * variants (e.g. thenAcceptAsync) for long running actions.</p>
+     * @return Future that completes with a copy of the received sensor data (all sensors packet layout, 80 bytes),
+     * or exceptionally with a TimeoutException if no sensor data is received within 500ms after the request.
+     */
+    public CompletableFuture<byte[]> updateSensorsAsync() {
+        while (true) {
+            final CompletableFuture<byte[]> pending = pendingSensorUpdate.get();
+            if (pending != null)
+                return pending;
+            final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+            if (pendingSensorUpdate.compareAndSet(null, future)) {
+                final long delay = lastSensorUpdate + SENSOR_UPDATE_INTERVAL - System.nanoTime();
+                if (delay <= 0 || sensorStreaming) {
+                    requestSensorUpdate(future);
+                } else {
+                    scheduler().schedule(new Runnable() {
+                        public void run() {
+                            requestSensorUpdate(future);
+                        }
+                    }, delay, TimeUnit.NANOSECONDS);
+                }
+                return future;
+            }
+        }
+    }
+
+    /**
+     * Wait until new sensor data is received. After updateSensors() this returns as soon as the response
+     * to that request is received (or immediately if it is already received), while streaming this returns
+     * when the next stream packet is received.
+     * <p>Note: This replaces a fixed sleep after updateSensors(), at 115200 baud all sensor data is received
+     * within about 7ms.</p>
+     * @param timeoutMillis Maximum time to wait in milliseconds.
+     * @return True if new sensor data is received, false on timeout or interrupt.
+     */
+    public boolean awaitSensorData(int timeoutMillis) {
+        final long since = sensorStreaming ? sensorDataSequence : sensorRequestSequence;
+        if (sensorDataSequence != since)
+            return true;
+
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        sensorDataWaitLock.lock();
+        try {
+            sensorDataWaiters.incrementAndGet();
+            while (sensorDataSequence == since) {
+                if (remaining <= 0)
+                    return false;
+                remaining = sensorDataReceived.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            sensorDataWaiters.decrementAndGet();
+            sensorDataWaitLock.unlock();
+        }
+    }
+
+    /**
+     * Set the executor used to schedule (asynchronous) sensor data requests and timeouts. By default a
+     * scheduler thread shared by all roomba instances is used.
+     * @param scheduler Scheduled executor service, or null for the shared default scheduler.
+     */
+    public void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the executor used to schedule (asynchronous) tasks.
+     * @return Scheduled executor service.
+     */
+    ScheduledExecutorService scheduler() {
+        final ScheduledExecutorService executor = scheduler;
+        return executor != null ? executor : DefaultScheduler.INSTANCE;
+    }
 
-        final long now = System.currentTimeMillis();
-        if (lastSensorUpdate != 0 && (now - lastSensorUpdate) < 50) {
+    /**
+     * Send the sensor data request of an asynchronous sensor update and schedule its timeout.
+     * @param future Future of the sensor update.
+     */
+    private void requestSensorUpdate(final CompletableFuture<byte[]> future) {
+        // Await before sending, the response may arrive before send returns
+        awaitingSensorUpdate = future;
+        if (!sensorStreaming) {
+            lastSensorUpdate = System.nanoTime();
+            sensorRequestSequence = sensorDataSequence;
+            sensorQueryPackets = SENSOR_QUERY_ALL;
+            receiveBufferReset = true;
+
+            log.debug("Requesting new sensor data.");
+            byte[] cmd = { (byte)OPC_QUERY, (byte)SENSOR_PACKET_ALL };
+            sendCommand(cmd);
+        }
+        scheduler().schedule(new Runnable() {
+            public void run() {
+                if (pendingSensorUpdate.compareAndSet(future, null)) {
+                    if (awaitingSensorUpdate == future) {
+                        awaitingSensorUpdate = null;
+                    }
+                    future.completeExceptionally(new TimeoutException("No sensor data received within " +
+                            SENSOR_UPDATE_TIMEOUT + "ms."));
+                }
+            }
+        }, SENSOR_UPDATE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This command requests only the given sensor packets from the roomba (Query List), which saves
+     * bandwidth when not all sensor values are needed. The received packets are available through the
+     * sensor getters, sensor values that are not requested keep their last received value.
+     * <p>Note: Don't invoke this method more than once per 50ms, this will possibly corrupt the sensor data received
+     * from the roomba.</p>
+     * @param packetIds Sensor packet ID's to request (0-58, 100-101, 106-107)
+     * @throws IllegalArgumentException Unknown packet ID or too many packets requested.
+     * @throws RuntimeException If sensor data updates are requested more than once per 50ms.
+     */
+    public void updateSensors(int[] packetIds) throws IllegalArgumentException, RuntimeException {
+
+        // Validate argument values
+        if (packetIds.length == 0 || packetIds.length > 255)
+            throw new IllegalArgumentException("Between 1 and 255 sensor packets should be requested");
+        int responseSize = 0;
+        for (int packetId: packetIds) {
+            if (sensorPacketSize(packetId) == 0)
+                throw new IllegalArgumentException("Unknown sensor packet ID: " + packetId);
+            responseSize += sensorPacketSize(packetId);
+        }
+        if (responseSize > RECEIVE_BUFFER_SIZE)
+            throw new IllegalArgumentException("Requested sensor packets are too large (max. " +
+                    RECEIVE_BUFFER_SIZE + " bytes)");
+
+        beginSensorUpdate(packetIds.clone());
+
+        log.debug("Requesting new sensor data (" + packetIds.length + " packets).");
+        byte[] cmd = new byte[packetIds.length + 2];
+        cmd[0] = (byte)OPC_QUERY_LIST;
+        cmd[1] = (byte)packetIds.length;
+        for (int i = 0; i < packetIds.length; i++) {
+            cmd[i + 2] = (byte)packetIds[i];
+        }
+        sendCommand(cmd);
+    }
+
+    /**
+     * Checks if a sensor update may be requested and prepares the receive path for the response.
+     * @param packetIds Sensor packet ID's of the expected response.
+     * @throws RuntimeException If sensor data is streamed or updates are requested more than once per 50ms.
+     */
+    private void beginSensorUpdate(int[] packetIds) throws RuntimeException {
+
+        if (sensorStreaming) {
+            throw new IllegalStateException("Sensor data is being streamed, use pauseStream() before " +
+                    "requesting sensor data with updateSensors().");
+        }
+
+        final long now = System.nanoTime();
+        if ((now - lastSensorUpdate) < SENSOR_UPDATE_INTERVAL) {
             throw new RuntimeException("Too many updateSensor() invocations, this should be limited to max " +
                     "one invocation per 50ms.");
         }
         lastSensorUpdate = now;
+        sensorRequestSequence = sensorDataSequence;
 
-        // Ensure we reset the buffer to starting position
-        sensorDataBufferIndex = 0;
+        // Ensure the receive buffer is cleared before the response arrives
+        sensorQueryPackets = packetIds;
+        receiveBufferReset = true;
+    }
 
-        log.debug("Requesting new sensor data.");
-        byte[] cmd = { (byte)OPC_QUERY, (byte)SENSOR_PACKET_ALL };
-        send(cmd);
+    /**
+     * This command starts a stream of all sensor data (packet 100). The roomba will send new sensor data
+     * every 15ms, which is available through the sensor getters without calling updateSensors().
+     * <p>Note: At 115200 baud a stream of all sensor data takes about half of each 15ms time slot.</p>
+     */
+    public void stream() {
+        stream(new int[] { SENSOR_PACKET_ALL });
+    }
+
+    /**
+     * This command starts a stream of the given sensor packets. The roomba will send the requested
+     * packets every 15ms, which are available through the sensor getters without calling updateSensors().
+     * Sensor values that are not part of the stream keep their last received value.
+     * @param packetIds Sensor packet ID's to stream (0-58, 100-101, 106-107)
+     * @throws IllegalArgumentException Unknown packet ID or the packets do not fit in one stream packet.
+     */
+    public void stream(int[] packetIds) throws IllegalArgumentException {
+
+        // Validate argument values
+        if (packetIds.length == 0)
+            throw new IllegalArgumentException("At least one sensor packet should be streamed");
+        int streamSize = 0;
+        for (int packetId: packetIds) {
+            if (sensorPacketSize(packetId) == 0)
+                throw new IllegalArgumentException("Unknown sensor packet ID: " + packetId);
+            streamSize += sensorPacketSize(packetId) + 1;
+        }
+        if (streamSize > 255)
+            throw new IllegalArgumentException("Requested sensor packets do not fit in a stream packet " +
+                    "(max. 255 bytes)");
+
+        log.info("Sending 'stream' command (" + packetIds.length + " packets) to roomba.");
+        byte[] cmd = new byte[packetIds.length + 2];
+        cmd[0] = (byte)OPC_STREAM;
+        cmd[1] = (byte)packetIds.length;
+        for (int i = 0; i < packetIds.length; i++) {
+            cmd[i + 2] = (byte)packetIds[i];
+        }
+        receiveBufferReset = true;
+        streamCommand = cmd;
+        sensorWatchStart = System.nanoTime();
+        sensorStreaming = true;
+        sendCommand(cmd);
+    }
+
+    /**
+     * This command pauses a sensor data stream started with the stream command, without
+     * clearing the list of requested packets.
+     * <p>Note: Wait at least 15ms before requesting sensor data with updateSensors().</p>
+     */
+    public void pauseStream() {
+        log.info("Sending 'pauseStream' command to roomba.");
+        byte[] cmd = { (byte)OPC_PAUSE_RESUME_STREAM, 0 };
+        sendCommand(cmd);
+        sensorStreaming = false;
+    }
+
+    /**
+     * This command resumes a sensor data stream paused with the pauseStream command.
+     * <p>Note: Ignored when no stream is started with the stream command (or after stop()).</p>
+     */
+    public void resumeStream() {
+        if (streamCommand == null) {
+            log.error("No sensor data stream to resume, use stream() first.");
+            return;
+        }
+        log.info("Sending 'resumeStream' command to roomba.");
+        byte[] cmd = { (byte)OPC_PAUSE_RESUME_STREAM, 1 };
+        receiveBufferReset = true;
+        sensorWatchStart = System.nanoTime();
+        sensorStreaming = true;
+        sendCommand(cmd);
+    }
+
+    /**
+     * Check if sensor data is being streamed by the roomba.
+     * @return True if a sensor data stream is active.
+     */
+    public boolean isStreaming() {
+        return sensorStreaming;
+    }
+
+    /**
+     * Enable the safety reflex. Every received sensor data packet is checked by the receiving thread before it
+     * is published, when one of the conditions occurs while the roomba drives, the wheels are stopped
+     * immediately: the stop is written ahead of all queued commands and all queued drive commands are
+     * dropped. Bumps only stop the roomba while it drives forward.
+     * <p>Note: The reflex only knows the drive commands of this library (drive, driveDirect, drivePWM).
+     * It stops the roomba once, until the next drive command.</p>
+     * @param conditions Mask of RoombaSensorFlags.CLIFFS, WHEEL_DROPS and BUMPS (or single flags
+     *                   of these groups), 0 to disable the safety reflex.
+     * @throws IllegalArgumentException When the conditions contain other sensors.
+     */
+    public void setSafetyReflex(long conditions) {
+        // Validate argument values
+        if ((conditions & ~SAFETY_REFLEX_CONDITIONS) != 0) {
+            throw new IllegalArgumentException("Conditions should only contain cliff, wheel drop and bump flags");
+        }
+        safetyReflex = conditions;
+    }
+
+    /**
+     * Get the number of times the safety reflex stopped the roomba.
+     * @return Number of safety stops.
+     */
+    public long safetyStops() {
+        return safetyStops.get();
+    }
+
+    /**
+     * Set the odometry that integrates the encoder counts of every received sensor data packet.
+     * <p>Note: The sensor data should include the encoder counts (packets 43 and 44), e.g. stream()
+     * or updateSensors(). Packets received before the first encoder counts are not integrated.</p>
+     * @param odometry Odometry, or null to stop integrating.
+     */
+    public void setOdometry(RoombaOdometry odometry) {
+        this.odometry = odometry;
+    }
+
+    /**
+     * Get the odometry of this roomba.
+     * @return Odometry, or null if not set.
+     */
+    public RoombaOdometry odometry() {
+        return odometry;
+    }
+
+    /**
+     * Add a listener of sensor changes. The received sensor data packets are compared with the previous
+     * packet, the listener is called by the receiving thread when one of its sensors changed.
+     * <p>Note: Without listeners the packets are not compared.</p>
+     * @param events Sensors of the listener, a mask of RoombaSensorFlags (e.g. BUMPS | CLIFFS | MODE_CHANGED).
+     * @param listener Listener.
+     * @throws IllegalArgumentException When the events are empty or the listener is null.
+     */
+    public void addSensorListener(long events, SensorListener listener) {
+        // Validate argument values
+        if (events == 0) {
+            throw new IllegalArgumentException("At least one sensor event should be given");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener should not be null");
+        }
+        sensorListenerLock.lock();
+        try {
+            sensorListeners.add(new SensorListenerEntry(events, listener));
+            sensorListenerEvents |= events;
+        } finally {
+            sensorListenerLock.unlock();
+        }
+    }
+
+    /**
+     * Remove a listener of sensor changes.
+     * @param listener Listener.
+     */
+    public void removeSensorListener(SensorListener listener) {
+        sensorListenerLock.lock();
+        try {
+            long events = 0;
+            for (SensorListenerEntry entry: sensorListeners) {
+                if (entry.listener == listener) {
+                    sensorListeners.remove(entry);
+                } else {
+                    events |= entry.events;
+                }
+            }
+            sensorListenerEvents = events;
+        } finally {
+            sensorListenerLock.unlock();
+        }
+    }
+
+    /**
+     * Set the maximum time between two received bytes of the same sensor data packet. When the roomba
+     * has been silent for longer than this time, a partially received packet is considered truncated
+     * and is discarded, so the next packet is decoded from its first byte again.
+     * <p>Note: The roomba sends a complete packet at once, the default of 10ms allows for serial driver
+     * latency while still realigning within one stream period (15ms).</p>
+     * @param millis Maximum time between bytes of one packet in milliseconds (min. 1ms)
+     * @throws IllegalArgumentException If the timeout is smaller than 1ms.
+     */
+    public void setPacketGapTimeout(int millis) throws IllegalArgumentException {
+        if (millis < 1)
+            throw new IllegalArgumentException("Packet gap timeout should be at least 1ms");
+        packetGapTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Get the number of sensor data packets that were received and decoded successfully.
+     * @return Number of received packets.
+     */
+    public long receivedPackets() {
+        return receivedPackets;
+    }
+
+    /**
+     * Get the number of times the receiver skipped bytes to find the start of a stream packet.
+     * @return Number of realignments.
+     */
+    public long realignedPackets() {
+        return realignedPackets;
+    }
+
+    /**
+     * Get the number of partially received sensor data packets that were discarded, because the
+     * remaining bytes did not arrive in time or new sensor data was requested.
+     * @return Number of truncated packets.
+     */
+    public long truncatedPackets() {
+        return truncatedPackets;
+    }
+
+    /**
+     * Get the number of complete stream packets that were discarded because of an invalid checksum
+     * or invalid content.
+     * @return Number of discarded packets.
+     */
+    public long discardedPackets() {
+        return discardedPackets;
+    }
+
+    /**
+     * Get the number of commands that could not be written to the roomba, e.g. because the
+     * connection was lost.
+     * @return Number of failed writes.
+     */
+    public long sendFailures() {
+        return sendFailures.get();
+    }
+
+    /**
+     * Get the number of commands that were dropped by the overflow policy of the outbound
+     * command queue (see setOutboundQueue).
+     * @return Number of dropped commands.
+     */
+    public long droppedCommands() {
+        return droppedCommands.get();
+    }
+
+    /**
+     * Check if expected sensor data is not received in time: a sensor data request is not answered
+     * or no stream packet is received while streaming, for longer than the given timeout.
+     * @param timeout Timeout in nanoseconds.
+     * @return True if the roomba is silent while sensor data is expected.
+     */
+    boolean isSensorDataOverdue(long timeout) {
+        final long now = System.nanoTime();
+        final long last = lastSensorData;
+        final long watchStart = sensorWatchStart;
+        final long since = (watchStart - last > 0) ? watchStart : last;
+        if (sensorStreaming)
+            return now - since > timeout;
+        final long requested = lastSensorUpdate;
+        return requested - since > 0 && now - requested > timeout;
+    }
+
+    /**
+     * Process incoming (sensor) data, this should be called by the implementation
+     * from its receiving thread. The data is copied into the receive buffer and every
+     * completed sensor data packet is made available to the sensor getters.
+     * @param data Received bytes.
+     * @param length Number of received bytes in data.
+     */
+    void receive(byte[] data, int length) {
+        beginReceive();
+        receiveBuffer.write(data, 0, length);
+        decodeReceived();
+    }
+
+    /**
+     * Process received data, see receive(byte[], int).
+     * @param data Received data (position - limit), its position is advanced to its limit.
+     */
+    void receive(ByteBuffer data) {
+        beginReceive();
+        receiveBuffer.write(data);
+        decodeReceived();
+    }
+
+    /**
+     * Discard stale data from the receive buffer before new data is written to it.
+     */
+    private void beginReceive() {
+        final long now = System.nanoTime();
+        if (receiveBufferReset) {
+            receiveBufferReset = false;
+            discardPartialPacket();
+        } else if (receiveBuffer.available() > 0 && now - lastReceiveTime > packetGapTimeout) {
+            log.debug("Sensor data packet not completed in time, discarding partial packet.");
+            discardPartialPacket();
+        }
+        lastReceiveTime = now;
+    }
+
+    /**
+     * Decode all complete packets in the receive buffer.
+     */
+    private void decodeReceived() {
+        if (sensorStreaming) {
+            receiveStreamPackets();
+            return;
+        }
+        receiveQueryResponses();
+    }
+
+    /**
+     * Decode all complete query responses in the receive buffer. A query response contains the data
+     * of the requested packets in order, every packet is read directly to its offset in the all sensors
+     * (100) packet layout.
+     */
+    private void receiveQueryResponses() {
+        final int[] packetIds = sensorQueryPackets;
+        int responseSize = 0;
+        for (int packetId: packetIds) {
+            responseSize += SENSOR_PACKET_SIZE[packetId];
+        }
+        while (receiveBuffer.available() >= responseSize) {
+            for (int packetId: packetIds) {
+                receiveBuffer.read(sensorDataBuffer, SENSOR_PACKET_OFFSET[packetId], SENSOR_PACKET_SIZE[packetId]);
+                encoderCountsReceived |= containsEncoderCounts(packetId);
+            }
+            log.debug("Received sensor data packet.");
+            receivedPackets++;
+            publishSensorData(sensorDataBuffer);
+        }
+    }
+
+    /**
+     * Discard a partially received packet from the receive buffer.
+     */
+    private void discardPartialPacket() {
+        if (receiveBuffer.available() > 0) {
+            truncatedPackets++;
+            receiveBuffer.clear();
+        }
+        realigning = false;
+    }
+
+    /**
+     * Decode all complete stream packets in the receive buffer. A stream packet looks like:
+     * [header(19)][n-bytes][packet ID 1][packet 1 data]...[packet ID x][packet x data][checksum]
+     * Bytes are skipped until a header with a valid length and checksum is found.
+     */
+    private void receiveStreamPackets() {
+        while (receiveBuffer.available() >= SENSOR_STREAM_OVERHEAD) {
+            if (receiveBuffer.peek(0) != (byte)SENSOR_STREAM_HEADER) {
+                receiveBuffer.skip(1);
+                realigning = true;
+                continue;
+            }
+            final int packetSize = (receiveBuffer.peek(1) & 0xff) + SENSOR_STREAM_OVERHEAD;
+            if (receiveBuffer.available() < packetSize) {
+                return;
+            }
+            int checksum = 0;
+            for (int i = 0; i < packetSize; i++) {
+                checksum += receiveBuffer.peek(i);
+            }
+            if ((checksum & 0xff) != 0) {
+                log.debug("Invalid stream packet checksum, skipping header.");
+                discardedPackets++;
+                receiveBuffer.skip(1);
+                realigning = true;
+                continue;
+            }
+            if (realigning) {
+                realigning = false;
+                realignedPackets++;
+            }
+            receiveBuffer.read(streamPacketBuffer, 0, packetSize);
+            if (decodeSensorPackets(streamPacketBuffer, 2, packetSize - 1)) {
+                log.debug("Received sensor stream packet.");
+                receivedPackets++;
+                publishSensorData(sensorDataBuffer);
+            } else {
+                log.debug("Invalid sensor packet ID in stream packet, packet discarded.");
+                discardedPackets++;
+            }
+        }
+    }
+
+    /**
+     * Decode a list of [packet ID][packet data] pairs into the sensor data buffer, every packet is
+     * written at its offset in the all sensors (100) packet layout.
+     * @param packets Array containing the packet ID/data pairs.
+     * @param offset Offset of the first packet ID.
+     * @param end Offset after the last packet data byte.
+     * @return False if an unknown packet ID was found or the packets do not match the given length.
+     */
+    private boolean decodeSensorPackets(byte[] packets, int offset, int end) {
+        // Validate before decoding, a corrupt packet should not change the sensor data buffer
+        int index = offset;
+        while (index < end) {
+            final int packetSize = sensorPacketSize(packets[index] & 0xff);
+            if (packetSize == 0)
+                return false;
+            index += packetSize + 1;
+        }
+        if (index != end)
+            return false;
+
+        index = offset;
+        while (index < end) {
+            final int packetId = packets[index] & 0xff;
+            final int packetSize = sensorPacketSize(packetId);
+            System.arraycopy(packets, index + 1, sensorDataBuffer, SENSOR_PACKET_OFFSET[packetId], packetSize);
+            encoderCountsReceived |= containsEncoderCounts(packetId);
+            index += packetSize + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Check if sensor data (all sensors packet layout) contains plausible values, used to check
+     * if a roomba responds when probing a serial connection.
+     * @param data Sensor data.
+     * @return True if all range checked sensor values are within range.
+     */
+    static boolean isValidSensorData(byte[] data) {
+        if (data == null || data.length != SENSOR_PACKET_ALL_SIZE)
+            return false;
+        for (int offset = SENSOR_WALL_OFFSET; offset <= SENSOR_VIRTUAL_WALL_OFFSET; offset++) {
+            if ((data[offset] & 0xff) > 1)
+                return false;
+        }
+        return (data[SENSOR_BUMPS_WHEELDROPS_OFFSET] & 0xf0) == 0
+                && (data[SENSOR_CHARGING_STATE_OFFSET] & 0xff) <= 5
+                && (data[SENSOR_OI_MODE_OFFSET] & 0xff) <= 3
+                && (data[SENSOR_SONG_NUMBER_OFFSET] & 0xff) <= 15
+                && (data[SENSOR_SONG_PLAYING_OFFSET] & 0xff) <= 1
+                && (data[SENSOR_STASIS] & 0xff) <= 3;
+    }
+
+    /**
+     * Check if a sensor packet contains (one of) the encoder counts.
+     * @param packetId Valid sensor packet ID.
+     * @return True if the packet overlaps the left or right encoder counts.
+     */
+    static boolean containsEncoderCounts(int packetId) {
+        final int offset = SENSOR_PACKET_OFFSET[packetId];
+        return offset < SENSOR_RIGHT_ENCODER_COUNTS_OFFSET + 2
+                && offset + SENSOR_PACKET_SIZE[packetId] > SENSOR_LEFT_ENCODER_COUNTS_OFFSET;
+    }
+
+    /**
+     * Get the size of a sensor packet.
+     * @param packetId Sensor packet ID.
+     * @return Size in bytes, 0 for an unknown packet ID.
+     */
+    static int sensorPacketSize(int packetId) {
+        return (packetId >= 0 && packetId < SENSOR_PACKET_SIZE.length) ? SENSOR_PACKET_SIZE[packetId] : 0;
+    }
+
+    /**
+     * Publish a completed sensor data packet to the sensor getters, wake up threads waiting
+     * for sensor data and complete a pending asynchronous sensor update. The packet is copied
+     * under the write lock of sensorDataLock, readers validate their (optimistic) read
+     * against it so they never observe a mix of two packets.
+     * @param packet Completed sensor data packet (SENSOR_PACKET_ALL_SIZE bytes).
+     */
+    void publishSensorData(byte[] packet) {
+        final long now = System.nanoTime();
+        lastSensorData = now;
+        final long flags = RoombaSensorFlags.pack(packet);
+        // Safety reflex, stop the wheels before the packet is published
+        final long reflex = flags & safetyReflex;
+        if (reflex != 0 && driveDirection != DRIVE_STOPPED &&
+                ((reflex & ~RoombaSensorFlags.BUMPS) != 0 || driveDirection == DRIVE_FORWARD)) {
+            safetyStop(reflex);
+        }
+        // Diff with the previous packet, only this thread writes the sensor data
+        final long changed = (flags ^ sensorFlags) |
+                (packet[SENSOR_CHARGING_STATE_OFFSET] != currentSensorData[SENSOR_CHARGING_STATE_OFFSET] ?
+                        RoombaSensorFlags.CHARGING_STATE_CHANGED : 0) |
+                (packet[SENSOR_OI_MODE_OFFSET] != currentSensorData[SENSOR_OI_MODE_OFFSET] ?
+                        RoombaSensorFlags.MODE_CHANGED : 0);
+        final long stamp = sensorDataLock.writeLock();
+        try {
+            System.arraycopy(packet, 0, currentSensorData, 0, SENSOR_PACKET_ALL_SIZE);
+            sensorFlags = flags;
+        } finally {
+            sensorDataLock.unlockWrite(stamp);
+        }
+
+        // Integrate the encoder counts, once they are received (the buffer holds 0 until then)
+        final RoombaOdometry odometry = this.odometry;
+        if (odometry != null && encoderCountsReceived) {
+            final int left = unsigned16BitToInt(packet[SENSOR_LEFT_ENCODER_COUNTS_OFFSET],
+                    packet[SENSOR_LEFT_ENCODER_COUNTS_OFFSET+1]);
+            final int right = unsigned16BitToInt(packet[SENSOR_RIGHT_ENCODER_COUNTS_OFFSET],
+                    packet[SENSOR_RIGHT_ENCODER_COUNTS_OFFSET+1]);
+            odometry.update(now, left, right);
+        }
+
+        // Wake up threads waiting for sensor data
+        sensorDataSequence++;
+        if (sensorDataWaiters.get() > 0) {
+            sensorDataWaitLock.lock();
+            try {
+                sensorDataReceived.signalAll();
+            } finally {
+                sensorDataWaitLock.unlock();
+            }
+        }
+
+        // Complete the pending asynchronous sensor update
+        final CompletableFuture<byte[]> awaiting = awaitingSensorUpdate;
+        if (awaiting != null) {
+            awaitingSensorUpdate = null;
+            pendingSensorUpdate.compareAndSet(awaiting, null);
+            awaiting.complete(Arrays.copyOf(packet, SENSOR_PACKET_ALL_SIZE));
+        }
+
+        // Notify the listeners of the changed sensors
+        if ((changed & sensorListenerEvents) != 0) {
+            notifySensorListeners(packet, changed);
+        }
+    }
+
+    /**
+     * Stop the wheels, ahead of all queued commands. Without batched writes the stop is written by the
+     * scheduler, so a blocking write does not stall the receiving thread (e.g. the selector thread shared
+     * by all socket connections).
+     * @param reason Sensor flags that triggered the stop.
+     */
+    private void safetyStop(long reason) {
+        driveDirection = DRIVE_STOPPED;
+        safetyStops.incrementAndGet();
+        log.warn("Safety reflex stops the roomba, sensors: 0x" + Long.toHexString(reason));
+        final RoombaCommandWriter writer = commandWriter;
+        if (writer != null) {
+            writer.enqueueUrgent(SAFETY_STOP);
+            return;
+        }
+        try {
+            scheduler().execute(safetyStopTask);
+        } catch (RejectedExecutionException ex) {
+            // Scheduler shut down, write the stop anyway
+            transmit(SAFETY_STOP);
+        }
+    }
+
+    private void notifySensorListeners(byte[] packet, long changed) {
+        if (sensorListenerBuffer == null || sensorListenerBuffer.array() != packet) {
+            sensorListenerBuffer = ByteBuffer.wrap(packet);
+        }
+        sensorListenerFrame.wrap(sensorListenerBuffer, 0);
+        for (SensorListenerEntry entry: sensorListeners) {
+            final long events = changed & entry.events;
+            if (events != 0) {
+                try {
+                    entry.listener.sensorsChanged(this, events, sensorListenerFrame);
+                } catch (RuntimeException ex) {
+                    log.error("Sensor listener failed, error: " + ex.getMessage());
+                }
+            }
+        }
     }
 
     //endregion
 
     //region Roomba sensor value getters
 
+    /**
+     * Copy the current sensor data to a buffer, e.g. to read it later with a RoombaSensorFrame.
+     * All bytes are guaranteed to be from the same sensor data packet.
+     * @param dst Destination buffer, the data is written at its position, which is advanced by
+     *            RoombaSensorFrame.SIZE bytes.
+     * @return The destination buffer.
+     * @throws BufferOverflowException When the buffer has less than RoombaSensorFrame.SIZE bytes remaining.
+     */
+    public ByteBuffer readSensorData(ByteBuffer dst) {
+        final int position = dst.position();
+        if (dst.remaining() < SENSOR_PACKET_ALL_SIZE) {
+            throw new BufferOverflowException();
+        }
+        long stamp;
+        do {
+            stamp = sensorDataLock.tryOptimisticRead();
+            final byte[] data = currentSensorData;
+            for (int i = 0; i < SENSOR_PACKET_ALL_SIZE; i++) {
+                dst.put(position + i, data[i]);
+            }
+        } while (!sensorDataLock.validate(stamp));
+        ((Buffer) dst).position(position + SENSOR_PACKET_ALL_SIZE);
+        return dst;
+    }
+
     /**
      * Check if a safety fault has occurred, this will put the roomba into passive mode.
      * @return True if a safety fault has occurred
      */
     public boolean safetyFault() {
-        return bumpRight() || bumpLeft() || wheelDropRight() || wheelDropLeft() || cliffLeft() || cliffFrontLeft() || cliffFrontRight() || cliffRight();
+        boolean fault;
+        long stamp;
+        do {
+            stamp = sensorDataLock.tryOptimisticRead();
+            final byte[] data = currentSensorData;
+            // Single comparison of the bumps, wheel drops and cliff bytes
+            fault = ((data[SENSOR_BUMPS_WHEELDROPS_OFFSET] & SENSOR_BUMPS_WHEELDROPS_MASK) |
+                    data[SENSOR_CLIFF_LEFT_OFFSET] | data[SENSOR_CLIFF_FRONT_LEFT_OFFSET] |
+                    data[SENSOR_CLIFF_FRONT_RIGHT_OFFSET] | data[SENSOR_CLIFF_RIGHT_OFFSET]) != 0;
+        } while (!sensorDataLock.validate(stamp));
+        return fault;
+    }
+
+    /**
+     * Get all boolean sensor values of the current sensor data, packed in a single long (see
+     * RoombaSensorFlags). The flags are packed once per received sensor data packet, so checks of
+     * multiple sensors become a single mask comparison.
+     * @return Sensor flags of the last received sensor data.
+     */
+    public long sensorFlags() {
+        long flags;
+        long stamp;
+        do {
+            stamp = sensorDataLock.tryOptimisticRead();
+            flags = sensorFlags;
+        } while (!sensorDataLock.validate(stamp));
+        return flags;
     }
 
     /**
@@ -884,7 +1949,7 @@ public abstract class RoombaJSSC {
      * @return Distance travelled in mm since last sensor data request
      */
     public int distanceTraveled() {
-        return signed16BitToInt(currentSensorData[SENSOR_DISTANCE_OFFSET], currentSensorData[SENSOR_DISTANCE_OFFSET+1]);
+        return sensorSigned16(SENSOR_DISTANCE_OFFSET);
     }
 
     /**
@@ -895,7 +1960,7 @@ public abstract class RoombaJSSC {
      * @return Angle turned in degrees since last sensor data request
      */
     public int angleTurned() {
-        return signed16BitToInt(currentSensorData[SENSOR_ANGLE_OFFSET], currentSensorData[SENSOR_ANGLE_OFFSET+1]);
+        return sensorSigned16(SENSOR_ANGLE_OFFSET);
     }
 
     /**
@@ -920,7 +1985,7 @@ public abstract class RoombaJSSC {
      * @return battery voltage (0 - 65535 mV)
      */
     public int batteryVoltage() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_VOLTAGE_OFFSET], currentSensorData[SENSOR_VOLTAGE_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_VOLTAGE_OFFSET);
     }
 
     /**
@@ -930,7 +1995,7 @@ public abstract class RoombaJSSC {
      * @return Current in milliamps (-32768, 32768 mA)
      */
     public int batteryCurrent() {
-        return signed16BitToInt(currentSensorData[SENSOR_CURRENT_OFFSET], currentSensorData[SENSOR_CURRENT_OFFSET+1]);
+        return sensorSigned16(SENSOR_CURRENT_OFFSET);
     }
 
     /**
@@ -946,8 +2011,7 @@ public abstract class RoombaJSSC {
      * @return Estimated battery charge (0 - 65535 mAh)
      */
     public int batteryCharge() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_BATTERY_CHARGE_OFFSET],
-                currentSensorData[SENSOR_BATTERY_CHARGE_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_BATTERY_CHARGE_OFFSET);
     }
 
     /**
@@ -955,8 +2019,7 @@ public abstract class RoombaJSSC {
      * @return Estimated charge capacity (0 - 65535 mAh)
      */
     public int batteryCapacity() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_BATTERY_CAPACITY_OFFSET],
-                currentSensorData[SENSOR_BATTERY_CAPACITY_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_BATTERY_CAPACITY_OFFSET);
     }
 
     /**
@@ -964,8 +2027,7 @@ public abstract class RoombaJSSC {
      * @return Strength of wall signal (0-1023)
      */
     public int wallSignal() {
-       return unsigned16BitToInt(currentSensorData[SENSOR_WALL_SIGNAL_OFFSET],
-               currentSensorData[SENSOR_WALL_SIGNAL_OFFSET+1]);
+       return sensorUnsigned16(SENSOR_WALL_SIGNAL_OFFSET);
     }
 
     /**
@@ -973,8 +2035,7 @@ public abstract class RoombaJSSC {
      * @return Strength of cliff left signal(0-4095)
      */
     public int cliffSignalLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_CLIFF_LEFT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_CLIFF_LEFT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_CLIFF_LEFT_SIGNAL_OFFSET);
     }
 
     /**
@@ -982,8 +2043,7 @@ public abstract class RoombaJSSC {
      * @return Strength of cliff front left signal(0-4095)
      */
     public int cliffSignalFrontLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET);
     }
 
     /**
@@ -991,8 +2051,7 @@ public abstract class RoombaJSSC {
      * @return Strength of cliff front left signal(0-4095)
      */
     public int cliffSignalFrontRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1000,8 +2059,7 @@ public abstract class RoombaJSSC {
      * @return Strength of cliff right signal(0-4095)
      */
     public int cliffSignalRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1056,8 +2114,7 @@ public abstract class RoombaJSSC {
      * @return Requested velocity (-500 - 500mm/s)
      */
     public int requestedVelocity() {
-        return signed16BitToInt(currentSensorData[SENSOR_REQUESTED_VELOCITY_OFFSET],
-                currentSensorData[SENSOR_REQUESTED_VELOCITY_OFFSET+1]);
+        return sensorSigned16(SENSOR_REQUESTED_VELOCITY_OFFSET);
     }
 
     /**
@@ -1065,8 +2122,7 @@ public abstract class RoombaJSSC {
      * @return Requested radius (-32768 - 32767mm)
      */
     public int requestedRadius() {
-        return signed16BitToInt(currentSensorData[SENSOR_REQUESTED_RADIUS_OFFSET],
-                currentSensorData[SENSOR_REQUESTED_RADIUS_OFFSET+1]);
+        return sensorSigned16(SENSOR_REQUESTED_RADIUS_OFFSET);
     }
 
     /**
@@ -1074,8 +2130,7 @@ public abstract class RoombaJSSC {
      * @return Requested right wheel velocity (-500 - 500mm/s)
      */
     public int requestedVelocityRight() {
-        return signed16BitToInt(currentSensorData[SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET],
-                currentSensorData[SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET+1]);
+        return sensorSigned16(SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET);
     }
 
     /**
@@ -1083,8 +2138,7 @@ public abstract class RoombaJSSC {
      * @return Requested left wheel velocity (-500 - 500mm/s)
      */
     public int requestedVelocityLeft() {
-        return signed16BitToInt(currentSensorData[SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET],
-                currentSensorData[SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET+1]);
+        return sensorSigned16(SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET);
     }
 
     /**
@@ -1093,8 +2147,7 @@ public abstract class RoombaJSSC {
      * @return Cumulative left encoder counts (0-65535)
      */
     public int encoderCountsLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LEFT_ENCODER_COUNTS_OFFSET],
-                currentSensorData[SENSOR_LEFT_ENCODER_COUNTS_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LEFT_ENCODER_COUNTS_OFFSET);
     }
 
     /**
@@ -1103,8 +2156,7 @@ public abstract class RoombaJSSC {
      * @return Cumulative right encoder counts (0-65535)
      */
     public int encoderCountsRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_RIGHT_ENCODER_COUNTS_OFFSET],
-                currentSensorData[SENSOR_RIGHT_ENCODER_COUNTS_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_RIGHT_ENCODER_COUNTS_OFFSET);
     }
 
     /**
@@ -1160,8 +2212,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1169,8 +2220,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalFrontLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1178,8 +2228,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalCenterLeft() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1187,8 +2236,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalCenterRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1196,8 +2244,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalFrontRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1205,8 +2252,7 @@ public abstract class RoombaJSSC {
      * @return Signal strength (0-4095)
      */
     public int lightBumperSignalRight() {
-        return unsigned16BitToInt(currentSensorData[SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET],
-                currentSensorData[SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET+1]);
+        return sensorUnsigned16(SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET);
     }
 
     /**
@@ -1214,8 +2260,7 @@ public abstract class RoombaJSSC {
      * @return Motor current in mA (-32768 - 32767 mA)
      */
     public int motorCurrentLeft() {
-        return signed16BitToInt(currentSensorData[SENSOR_LEFT_MOTOR_CURRENT],
-                currentSensorData[SENSOR_LEFT_MOTOR_CURRENT+1]);
+        return sensorSigned16(SENSOR_LEFT_MOTOR_CURRENT);
     }
 
     /**
@@ -1223,8 +2268,7 @@ public abstract class RoombaJSSC {
      * @return Motor current in mA (-32768 - 32767 mA)
      */
     public int motorCurrentRight() {
-        return signed16BitToInt(currentSensorData[SENSOR_RIGHT_MOTOR_CURRENT],
-                currentSensorData[SENSOR_RIGHT_MOTOR_CURRENT+1]);
+        return sensorSigned16(SENSOR_RIGHT_MOTOR_CURRENT);
     }
 
     /**
@@ -1232,8 +2276,7 @@ public abstract class RoombaJSSC {
      * @return Motor current in mA (-32768 - 32767 mA)
      */
     public int motorCurrentMainBrush() {
-        return signed16BitToInt(currentSensorData[SENSOR_MAIN_BRUSH_CURRENT],
-                currentSensorData[SENSOR_MAIN_BRUSH_CURRENT+1]);
+        return sensorSigned16(SENSOR_MAIN_BRUSH_CURRENT);
     }
 
     /**
@@ -1241,8 +2284,7 @@ public abstract class RoombaJSSC {
      * @return Motor current in mA (-32768 - 32767 mA)
      */
     public int motorCurrentSideBrush() {
-        return signed16BitToInt(currentSensorData[SENSOR_SIDE_BRUSH_CURRENT],
-                currentSensorData[SENSOR_SIDE_BRUSH_CURRENT+1]);
+        return sensorSigned16(SENSOR_SIDE_BRUSH_CURRENT);
     }
 
     /**
@@ -1259,12 +2301,232 @@ public abstract class RoombaJSSC {
 
     //region Class helpers
 
+    /**
+     * Send a command to the roomba, either directly or through the command writer when
+     * batched writes are enabled.
+     * @param bytes Command bytes.
+     */
+    void sendCommand(byte[] bytes) {
+        final RoombaCommandWriter writer = commandWriter;
+        if (writer != null) {
+            writer.enqueue(bytes);
+        } else {
+            transmit(bytes);
+        }
+    }
+
+    /**
+     * Send a command that supersedes earlier commands of the same kind. When command coalescing is
+     * enabled, a queued command of the same slot that is not written yet is replaced.
+     * @param bytes Command bytes.
+     * @param slot Coalescing slot of the command writer.
+     */
+    void sendCommand(byte[] bytes, int slot) {
+        final RoombaCommandWriter writer = commandWriter;
+        if (writer != null && commandCoalescing) {
+            writer.enqueue(bytes, slot);
+        } else {
+            sendCommand(bytes);
+        }
+    }
+
+    /**
+     * Send a single byte command to the roomba, either directly or through the command writer
+     * when batched writes are enabled.
+     * @param b Command byte.
+     */
+    void sendCommand(int b) {
+        final RoombaCommandWriter writer = commandWriter;
+        if (writer != null) {
+            writer.enqueue(SINGLE_BYTE_COMMANDS[b & 0xff]);
+        } else if (!send(b)) {
+            sendFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the drive direction of wheel velocities (or PWM values).
+     * @param right Right wheel velocity.
+     * @param left Left wheel velocity.
+     * @return DRIVE_STOPPED, DRIVE_FORWARD or DRIVE_OTHER (backward or turning in place).
+     */
+    private static int driveDirection(int right, int left) {
+        if (right == 0 && left == 0)
+            return DRIVE_STOPPED;
+        return right + left > 0 ? DRIVE_FORWARD : DRIVE_OTHER;
+    }
+
+    /**
+     * Get the command writer, batched writes are enabled when needed.
+     * @return Command writer.
+     */
+    private RoombaCommandWriter commandWriter() {
+        RoombaCommandWriter writer = commandWriter;
+        while (writer == null) {
+            setBatchedWrites(true);
+            writer = commandWriter;
+        }
+        return writer;
+    }
+
+    /**
+     * Count a command dropped by the overflow policy of the command writer.
+     */
+    void commandDropped() {
+        droppedCommands.incrementAndGet();
+    }
+
+    /**
+     * Check if a command is needed to keep the roomba under control: the start, mode, stop, reset,
+     * power and drive commands. These are never dropped by the DROP_NON_SAFETY overflow policy.
+     * @param command Command bytes.
+     * @return True if the command is a safety command.
+     */
+    static boolean isSafetyCommand(byte[] command) {
+        switch (command[0] & 0xff) {
+            case OPC_RESET:
+            case OPC_START:
+            case OPC_SAFE:
+            case OPC_FULL:
+            case OPC_POWER:
+            case OPC_DRIVE:
+            case OPC_DRIVE_WHEELS:
+            case OPC_DRIVE_PWM:
+            case OPC_STOP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check if a command sets the wheel velocities (drive, driveDirect or drivePWM).
+     * @param command Command bytes.
+     * @return True if the command is a drive command.
+     */
+    static boolean isDriveCommand(byte[] command) {
+        switch (command[0] & 0xff) {
+            case OPC_DRIVE:
+            case OPC_DRIVE_WHEELS:
+            case OPC_DRIVE_PWM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Write bytes to the roomba, failed writes are counted (see sendFailures()).
+     * @param bytes Bytes to write.
+     * @return True on success, False on failure.
+     */
+    boolean transmit(byte[] bytes) {
+        if (send(bytes))
+            return true;
+        sendFailures.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Write the first bytes of an array to the roomba, failed writes are counted (see sendFailures()).
+     * @param bytes Bytes to write.
+     * @param length Number of bytes to write.
+     * @return True on success, False on failure.
+     */
+    boolean transmit(byte[] bytes, int length) {
+        if (send(bytes, length))
+            return true;
+        sendFailures.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Send the first bytes of an array, e.g. a batch in a reused buffer. By default the bytes are
+     * copied to an array of the exact length, implementations that can write part of an array
+     * override this.
+     * @param bytes Bytes to send.
+     * @param length Number of bytes to send.
+     * @return True on success, False on failure.
+     */
+    boolean send(byte[] bytes, int length) {
+        return send(length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Connect again to the port of a lost connection, used by RoombaSupervisor. Implementations
+     * can override this to reuse the parameters of the previous connection.
+     * @param portId Name of the port.
+     * @return True on success, False on failure.
+     */
+    boolean reconnect(String portId) {
+        return connect(portId);
+    }
+
+    /**
+     * Restore the OI state of the roomba after a reconnect: the OI mode, the LEDs, all uploaded
+     * songs and the sensor data stream are sent again with a single write. With batched writes the
+     * state is queued behind the commands that are not written yet.
+     * @return True if the state is written (or queued), False if the write failed.
+     */
+    boolean replayState() {
+        final int mode = oiMode;
+        receiveBufferReset = true;
+        sensorWatchStart = System.nanoTime();
+        if (mode == OI_MODE_OFF)
+            return true;
+
+        // Start the OI and restore the mode first, LEDs can only be set in safe and full mode
+        final byte[][] commands = new byte[songCommands.length() + 3][];
+        int count = 0;
+        if (mode == OI_MODE_SAFE) {
+            commands[count++] = new byte[] { (byte)OPC_START, (byte)OPC_SAFE };
+        } else if (mode == OI_MODE_FULL) {
+            commands[count++] = new byte[] { (byte)OPC_START, (byte)OPC_FULL };
+        } else {
+            commands[count++] = SINGLE_BYTE_COMMANDS[OPC_START];
+        }
+        final byte[] leds = ledsCommand;
+        if (leds != null && mode != OI_MODE_PASSIVE)
+            commands[count++] = leds;
+        for (int i = 0; i < songCommands.length(); i++) {
+            final byte[] song = songCommands.get(i);
+            if (song != null)
+                commands[count++] = song;
+        }
+        final byte[] stream = streamCommand;
+        if (stream != null && sensorStreaming)
+            commands[count++] = stream;
+
+        log.info("Restoring OI state of roomba (mode: " + mode + ", " + count + " commands).");
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += commands[i].length;
+        }
+        final byte[] cmd = new byte[length];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(commands[i], 0, cmd, offset, commands[i].length);
+            offset += commands[i].length;
+        }
+        if (commandWriter != null) {
+            // A failed write is counted in sendFailures(), which the supervisor checks
+            sendCommand(cmd);
+            return true;
+        }
+        return transmit(cmd);
+    }
+
     /**
      * General sleep function that gives commands that use this function some time to instantiate.
      * @param millis Time in milliseconds that the current Thread should sleep.
      */
     public void sleep(int millis) {
-        try { Thread.sleep(millis); } catch (InterruptedException ex) {}
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            // Keep the interrupt status, e.g. to stop a control loop
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -1279,14 +2541,62 @@ public abstract class RoombaJSSC {
                 && c != 64;         // Not @
     }
 
-    private int signed16BitToInt(byte highByte, byte lowByte) {
+    static int signed16BitToInt(byte highByte, byte lowByte) {
         return lowByte & 0xff | (short) (highByte << 8);
     }
 
-    private int unsigned16BitToInt(byte highByte, byte lowByte) {
+    static int unsigned16BitToInt(byte highByte, byte lowByte) {
         return ((highByte & 0xff) << 8) | (lowByte & 0xff);
     }
 
+    /**
+     * Read a signed 16 bit sensor value from the current sensor data. Both bytes are
+     * guaranteed to be from the same sensor data packet.
+     * @param offset Offset of the high byte.
+     * @return Sensor value.
+     */
+    private int sensorSigned16(int offset) {
+        int value;
+        long stamp;
+        do {
+            stamp = sensorDataLock.tryOptimisticRead();
+            final byte[] data = currentSensorData;
+            value = signed16BitToInt(data[offset], data[offset+1]);
+        } while (!sensorDataLock.validate(stamp));
+        return value;
+    }
+
+    /**
+     * Read an unsigned 16 bit sensor value from the current sensor data. Both bytes are
+     * guaranteed to be from the same sensor data packet.
+     * @param offset Offset of the high byte.
+     * @return Sensor value.
+     */
+    private int sensorUnsigned16(int offset) {
+        int value;
+        long stamp;
+        do {
+            stamp = sensorDataLock.tryOptimisticRead();
+            final byte[] data = currentSensorData;
+            value = unsigned16BitToInt(data[offset], data[offset+1]);
+        } while (!sensorDataLock.validate(stamp));
+        return value;
+    }
+
+    /**
+     * Holder of the scheduler thread shared by all roomba instances, created on first use.
+     */
+    private static class DefaultScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "roomba-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
     //endregion
 
     //region static class variables
@@ -1314,83 +2624,162 @@ public abstract class RoombaJSSC {
     private static final int OPC_DIGIT_LEDS_ASCII   = 164;
     private static final int OPC_BUTTONS            = 165;
     private static final int OPC_SCHEDULE           = 167;
+    private static final int OPC_STREAM             = 148;
+    private static final int OPC_QUERY_LIST         = 149;
+    private static final int OPC_PAUSE_RESUME_STREAM = 150;
     private static final int OPC_SET_DAYTIME        = 168;
     private static final int OPC_STOP               = 173;
 
+    // OI modes
+    private static final int OI_MODE_OFF            = 0;
+    private static final int OI_MODE_PASSIVE        = 1;
+    private static final int OI_MODE_SAFE           = 2;
+    private static final int OI_MODE_FULL           = 3;
+
     // Sensor packets Group packet ID
     private static final int SENSOR_PACKET_ALL      = 100;
     static final int SENSOR_PACKET_ALL_SIZE         = 80;
+    private static final int[] SENSOR_QUERY_ALL     = { SENSOR_PACKET_ALL };
+
+    // Request used to probe for a roomba: start the OI and query all sensor data
+    static final byte[] PROBE_REQUEST = { (byte)OPC_START, (byte)OPC_QUERY, (byte)SENSOR_PACKET_ALL };
+
+    // Minimum time between sensor data requests (ns) and time to wait for a response (ms)
+    private static final long SENSOR_UPDATE_INTERVAL    = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int SENSOR_UPDATE_TIMEOUT      = 500;
+
+    // Sensor stream packet: [header][n-bytes][packet ID][data]...[checksum]
+    private static final int SENSOR_STREAM_HEADER       = 19;
+    private static final int SENSOR_STREAM_OVERHEAD     = 3;
+    private static final int SENSOR_STREAM_MAX_SIZE     = 255 + SENSOR_STREAM_OVERHEAD;
+
+    // Sizes of the single sensor packets 7-58, in order of the all sensors packet (100)
+    private static final int SENSOR_PACKET_FIRST = 7;
+    private static final int[] SENSOR_SINGLE_PACKET_SIZES = {
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 1, 2, 2, 1, 2, 2, 2, 2, 2, 2, 2, 1,
+            2, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 1, 2, 2, 2, 2, 2, 2, 1, 1, 2, 2, 2, 2, 1
+    };
+
+    // Group packets: { packet ID, first packet ID, last packet ID }
+    private static final int[][] SENSOR_GROUP_PACKETS = {
+            { 0, 7, 26 }, { 1, 7, 16 }, { 2, 17, 20 }, { 3, 21, 26 }, { 4, 27, 34 }, { 5, 35, 42 },
+            { 6, 7, 42 }, { 100, 7, 58 }, { 101, 43, 58 }, { 106, 46, 51 }, { 107, 54, 58 }
+    };
+
+    // Packet size and offset (in the all sensors packet) per packet ID, size 0 = unknown packet
+    static final int[] SENSOR_PACKET_SIZE = new int[108];
+    static final int[] SENSOR_PACKET_OFFSET = new int[108];
+
+    static {
+        int offset = 0;
+        for (int i = 0; i < SENSOR_SINGLE_PACKET_SIZES.length; i++) {
+            SENSOR_PACKET_SIZE[SENSOR_PACKET_FIRST + i] = SENSOR_SINGLE_PACKET_SIZES[i];
+            SENSOR_PACKET_OFFSET[SENSOR_PACKET_FIRST + i] = offset;
+            offset += SENSOR_SINGLE_PACKET_SIZES[i];
+        }
+        for (int[] group: SENSOR_GROUP_PACKETS) {
+            SENSOR_PACKET_OFFSET[group[0]] = SENSOR_PACKET_OFFSET[group[1]];
+            SENSOR_PACKET_SIZE[group[0]] = SENSOR_PACKET_OFFSET[group[2]] + SENSOR_PACKET_SIZE[group[2]] -
+                    SENSOR_PACKET_OFFSET[group[1]];
+        }
+    }
+
+    // Single byte commands, shared by all command writers
+    static final byte[][] SINGLE_BYTE_COMMANDS = new byte[256][];
+
+    static {
+        for (int i = 0; i < SINGLE_BYTE_COMMANDS.length; i++) {
+            SINGLE_BYTE_COMMANDS[i] = new byte[] { (byte)i };
+        }
+    }
+
+    // Drive directions of the last drive command, used by the safety reflex
+    private static final int DRIVE_STOPPED  = 0;
+    private static final int DRIVE_FORWARD  = 1;
+    private static final int DRIVE_OTHER    = 2;
+
+    // Safety reflex: sensors that can trigger it and the command that stops the wheels
+    private static final long SAFETY_REFLEX_CONDITIONS = RoombaSensorFlags.CLIFFS | RoombaSensorFlags.WHEEL_DROPS |
+            RoombaSensorFlags.BUMPS;
+    private static final byte[] SAFETY_STOP = { (byte)OPC_DRIVE_WHEELS, 0, 0, 0, 0 };
+
+    // Default capacity of the outbound command queue
+    private static final int DEFAULT_OUTBOUND_CAPACITY = 256;
+
+    // Receive buffer size (power of two)
+    static final int RECEIVE_BUFFER_SIZE            = 1024;
 
     // Sensor bytes offset
-    private static final int SENSOR_BUMPS_WHEELDROPS_OFFSET                 = 0;
-    private static final int SENSOR_WALL_OFFSET                             = 1;
-    private static final int SENSOR_CLIFF_LEFT_OFFSET                       = 2;
-    private static final int SENSOR_CLIFF_FRONT_LEFT_OFFSET                 = 3;
-    private static final int SENSOR_CLIFF_FRONT_RIGHT_OFFSET                = 4;
-    private static final int SENSOR_CLIFF_RIGHT_OFFSET                      = 5;
-    private static final int SENSOR_VIRTUAL_WALL_OFFSET                     = 6;
-    private static final int SENSOR_WHEEL_OVERCURRENT_OFFSET                = 7;
-    private static final int SENSOR_DIRT_DETECT_OFFSET                      = 8;
-    private static final int SENSOR_INFRARED_CHAR_OMNI_OFFSET               = 9;
-    private static final int SENSOR_BUTTONS_OFFSET                          = 11;
-    private static final int SENSOR_DISTANCE_OFFSET                         = 12;
-    private static final int SENSOR_ANGLE_OFFSET                            = 14;
-    private static final int SENSOR_CHARGING_STATE_OFFSET                   = 16;
-    private static final int SENSOR_VOLTAGE_OFFSET                          = 17;
-    private static final int SENSOR_CURRENT_OFFSET                          = 19;
-    private static final int SENSOR_TEMPERATURE_OFFSET                      = 21;
-    private static final int SENSOR_BATTERY_CHARGE_OFFSET                   = 22;
-    private static final int SENSOR_BATTERY_CAPACITY_OFFSET                 = 24;
-    private static final int SENSOR_WALL_SIGNAL_OFFSET                      = 26;
-    private static final int SENSOR_CLIFF_LEFT_SIGNAL_OFFSET                = 28;
-    private static final int SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET          = 30;
-    private static final int SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET         = 32;
-    private static final int SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET               = 34;
-    private static final int SENSOR_CHARGING_SOURCES_OFFSET                 = 39;
-    private static final int SENSOR_OI_MODE_OFFSET                          = 40;
-    private static final int SENSOR_SONG_NUMBER_OFFSET                      = 41;
-    private static final int SENSOR_SONG_PLAYING_OFFSET                     = 42;
-    private static final int SENSOR_REQUESTED_VELOCITY_OFFSET               = 44;
-    private static final int SENSOR_REQUESTED_RADIUS_OFFSET                 = 46;
-    private static final int SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET         = 48;
-    private static final int SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET          = 50;
-    private static final int SENSOR_LEFT_ENCODER_COUNTS_OFFSET              = 52;
-    private static final int SENSOR_RIGHT_ENCODER_COUNTS_OFFSET             = 54;
-    private static final int SENSOR_LIGHT_BUMPER_OFFSET                     = 56;
-    private static final int SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET         = 57;
-    private static final int SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET   = 59;
-    private static final int SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET  = 61;
-    private static final int SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET = 63;
-    private static final int SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET  = 65;
-    private static final int SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET        = 67;
-    private static final int SENSOR_INFRARED_CHAR_LEFT_OFFSET               = 69;
-    private static final int SENSOR_INFRARED_CHAR_RIGHT_OFFSET              = 70;
-    private static final int SENSOR_LEFT_MOTOR_CURRENT                      = 71;
-    private static final int SENSOR_RIGHT_MOTOR_CURRENT                     = 73;
-    private static final int SENSOR_MAIN_BRUSH_CURRENT                      = 75;
-    private static final int SENSOR_SIDE_BRUSH_CURRENT                      = 77;
-    private static final int SENSOR_STASIS                                  = 79;
+    static final int SENSOR_BUMPS_WHEELDROPS_OFFSET                 = 0;
+    static final int SENSOR_WALL_OFFSET                             = 1;
+    static final int SENSOR_CLIFF_LEFT_OFFSET                       = 2;
+    static final int SENSOR_CLIFF_FRONT_LEFT_OFFSET                 = 3;
+    static final int SENSOR_CLIFF_FRONT_RIGHT_OFFSET                = 4;
+    static final int SENSOR_CLIFF_RIGHT_OFFSET                      = 5;
+    static final int SENSOR_VIRTUAL_WALL_OFFSET                     = 6;
+    static final int SENSOR_WHEEL_OVERCURRENT_OFFSET                = 7;
+    static final int SENSOR_DIRT_DETECT_OFFSET                      = 8;
+    static final int SENSOR_INFRARED_CHAR_OMNI_OFFSET               = 9;
+    static final int SENSOR_BUTTONS_OFFSET                          = 11;
+    static final int SENSOR_DISTANCE_OFFSET                         = 12;
+    static final int SENSOR_ANGLE_OFFSET                            = 14;
+    static final int SENSOR_CHARGING_STATE_OFFSET                   = 16;
+    static final int SENSOR_VOLTAGE_OFFSET                          = 17;
+    static final int SENSOR_CURRENT_OFFSET                          = 19;
+    static final int SENSOR_TEMPERATURE_OFFSET                      = 21;
+    static final int SENSOR_BATTERY_CHARGE_OFFSET                   = 22;
+    static final int SENSOR_BATTERY_CAPACITY_OFFSET                 = 24;
+    static final int SENSOR_WALL_SIGNAL_OFFSET                      = 26;
+    static final int SENSOR_CLIFF_LEFT_SIGNAL_OFFSET                = 28;
+    static final int SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET          = 30;
+    static final int SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET         = 32;
+    static final int SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET               = 34;
+    static final int SENSOR_CHARGING_SOURCES_OFFSET                 = 39;
+    static final int SENSOR_OI_MODE_OFFSET                          = 40;
+    static final int SENSOR_SONG_NUMBER_OFFSET                      = 41;
+    static final int SENSOR_SONG_PLAYING_OFFSET                     = 42;
+    static final int SENSOR_REQUESTED_VELOCITY_OFFSET               = 44;
+    static final int SENSOR_REQUESTED_RADIUS_OFFSET                 = 46;
+    static final int SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET         = 48;
+    static final int SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET          = 50;
+    static final int SENSOR_LEFT_ENCODER_COUNTS_OFFSET              = 52;
+    static final int SENSOR_RIGHT_ENCODER_COUNTS_OFFSET             = 54;
+    static final int SENSOR_LIGHT_BUMPER_OFFSET                     = 56;
+    static final int SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET         = 57;
+    static final int SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET   = 59;
+    static final int SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET  = 61;
+    static final int SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET = 63;
+    static final int SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET  = 65;
+    static final int SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET        = 67;
+    static final int SENSOR_INFRARED_CHAR_LEFT_OFFSET               = 69;
+    static final int SENSOR_INFRARED_CHAR_RIGHT_OFFSET              = 70;
+    static final int SENSOR_LEFT_MOTOR_CURRENT                      = 71;
+    static final int SENSOR_RIGHT_MOTOR_CURRENT                     = 73;
+    static final int SENSOR_MAIN_BRUSH_CURRENT                      = 75;
+    static final int SENSOR_SIDE_BRUSH_CURRENT                      = 77;
+    static final int SENSOR_STASIS                                  = 79;
 
     // Sensor data bitmask
-    private static final int SENSOR_BUMP_RIGHT_MASK         = 0x1;
-    private static final int SENSOR_BUMP_LEFT_MASK          = 0x2;
-    private static final int SENSOR_WHEELDROP_RIGHT_MASK    = 0x4;
-    private static final int SENSOR_WHEELDROP_LEFT_MASK     = 0x8;
-
-    private static final int SENSOR_OVERCURRENT_SIDE_BRUSH_MASK     = 0x1;
-    private static final int SENSOR_OVERCURRENT_MAIN_BRUSH_MASK     = 0x4;
-    private static final int SENSOR_OVERCURRENT_RIGHT_WHEEL_MASK    = 0x8;
-    private static final int SENSOR_OVERCURRENT_LEFT_WHEEL_MASK     = 0x10;
-
-    private static final int SENSOR_CHARGER_INTERNAL_MASK = 0x1;
-    private static final int SENSOR_CHARGER_HOMEBASE_MASK = 0x2;
-
-    private static final int SENSOR_LIGHT_BUMPER_LEFT_MASK          = 0x1;
-    private static final int SENSOR_LIGHT_BUMPER_FRONT_LEFT_MASK    = 0x2;
-    private static final int SENSOR_LIGHT_BUMPER_CENTER_LEFT_MASK   = 0x4;
-    private static final int SENSOR_LIGHT_BUMPER_CENTER_RIGHT_MASK  = 0x8;
-    private static final int SENSOR_LIGHT_BUMPER_FRONT_RIGHT_MASK   = 0x10;
-    private static final int SENSOR_LIGHT_BUMPER_RIGHT_MASK         = 0x20;
+    static final int SENSOR_BUMP_RIGHT_MASK         = 0x1;
+    static final int SENSOR_BUMP_LEFT_MASK          = 0x2;
+    static final int SENSOR_WHEELDROP_RIGHT_MASK    = 0x4;
+    static final int SENSOR_WHEELDROP_LEFT_MASK     = 0x8;
+    static final int SENSOR_BUMPS_WHEELDROPS_MASK   = 0xf;
+
+    static final int SENSOR_OVERCURRENT_SIDE_BRUSH_MASK     = 0x1;
+    static final int SENSOR_OVERCURRENT_MAIN_BRUSH_MASK     = 0x4;
+    static final int SENSOR_OVERCURRENT_RIGHT_WHEEL_MASK    = 0x8;
+    static final int SENSOR_OVERCURRENT_LEFT_WHEEL_MASK     = 0x10;
+
+    static final int SENSOR_CHARGER_INTERNAL_MASK = 0x1;
+    static final int SENSOR_CHARGER_HOMEBASE_MASK = 0x2;
+
+    static final int SENSOR_LIGHT_BUMPER_LEFT_MASK          = 0x1;
+    static final int SENSOR_LIGHT_BUMPER_FRONT_LEFT_MASK    = 0x2;
+    static final int SENSOR_LIGHT_BUMPER_CENTER_LEFT_MASK   = 0x4;
+    static final int SENSOR_LIGHT_BUMPER_CENTER_RIGHT_MASK  = 0x8;
+    static final int SENSOR_LIGHT_BUMPER_FRONT_RIGHT_MASK   = 0x10;
+    static final int SENSOR_LIGHT_BUMPER_RIGHT_MASK         = 0x20;
 
     // Scheduling bitmask
     private static final int SCHEDULE_SUNDAY_MASK       = 0x1;
@@ -1422,14 +2811,14 @@ public abstract class RoombaJSSC {
     private static final int LEDS_SCHEDULE_SCHEDULE_MASK    = 0x10;
 
     // Buttons bitmask
-    private static final int BUTTONS_CLEAN_MASK     = 0x1;
-    private static final int BUTTONS_SPOT_MASK      = 0x2;
-    private static final int BUTTONS_DOCK_MASK      = 0x4;
-    private static final int BUTTONS_MINUTE_MASK    = 0x8;
-    private static final int BUTTONS_HOUR_MASK      = 0x10;
-    private static final int BUTTONS_DAY_MASK       = 0x20;
-    private static final int BUTTONS_SCHEDULE_MASK  = 0x40;
-    private static final int BUTTONS_CLOCK_MASK     = 0x80;
+    static final int BUTTONS_CLEAN_MASK     = 0x1;
+    static final int BUTTONS_SPOT_MASK      = 0x2;
+    static final int BUTTONS_DOCK_MASK      = 0x4;
+    static final int BUTTONS_MINUTE_MASK    = 0x8;
+    static final int BUTTONS_HOUR_MASK      = 0x10;
+    static final int BUTTONS_DAY_MASK       = 0x20;
+    static final int BUTTONS_SCHEDULE_MASK  = 0x40;
+    static final int BUTTONS_CLOCK_MASK     = 0x80;
 
     // Drive constants
     private static final int DRIVE_WHEEL_MAX_POWER  = 0xFF;
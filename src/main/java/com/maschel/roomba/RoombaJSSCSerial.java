@@ -32,22 +32,77 @@ package com.maschel.roomba;
 
 import jssc.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * RoombaJSSC implementation, this class contains all the serial library
  * dependent code.
  */
 public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListener {
 
+    /**
+     * Baud rate of the roomba after power on or battery change.
+     */
+    public static final int BAUDRATE_115200 = SerialPort.BAUDRATE_115200;
+
+    /**
+     * Baud rate of the roomba when powered on with the Clean button pressed (or set using the BRC pin).
+     */
+    public static final int BAUDRATE_19200 = SerialPort.BAUDRATE_19200;
+
+    /**
+     * Detect the baud rate on connect by probing the roomba at each supported baud rate.
+     */
+    public static final int BAUDRATE_AUTO = 0;
+
+    // Baud rates tried by the baud rate detection, in order
+    private static final int[] PROBE_BAUDRATES = { BAUDRATE_115200, BAUDRATE_19200 };
+
+    // Time to open and close the ports during discovery, on top of the probe timeouts (ms)
+    private static final int DISCOVERY_MARGIN = 500;
+
     public SerialPort serialPort;
 
     private String portName = null;
+    private RoombaPortRegistry portRegistry = null;
+    private int baudRate = BAUDRATE_115200;
+    private int probeTimeout = 250;
+
+    /**
+     * Set the registry used to list the serial ports and to check if a port exists. By default
+     * the registry shared by all serial roombas is used.
+     * @param portRegistry Port registry, or null for the shared registry.
+     */
+    public void setPortRegistry(RoombaPortRegistry portRegistry) {
+        this.portRegistry = portRegistry;
+    }
+
+    /**
+     * Get the registry used to list the serial ports.
+     * @return Port registry.
+     */
+    RoombaPortRegistry portRegistry() {
+        final RoombaPortRegistry registry = portRegistry;
+        return registry != null ? registry : RoombaPortRegistry.shared();
+    }
 
     /**
      * Get the list of available serial ports.
      * @return String[] of serial ports.
      */
     public String[] portList() {
-        String[] portNames = SerialPortList.getPortNames();
+        String[] portNames = portRegistry().portList();
         if (portNames.length == 0) {
             log.error("No serial ports found!");
         }
@@ -55,19 +110,211 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
     }
 
     /**
-     * Connect to serial port.
+     * Connect to serial port (115200 baud).
      * @param portId Name of serial port.
      * @return True on success, False on failure.
      */
     public boolean connect(String portId) {
+        return connect(portId, BAUDRATE_115200);
+    }
+
+    /**
+     * Connect to serial port using the given baud rate. When BAUDRATE_AUTO is used the roomba is probed at
+     * each supported baud rate (115200, 19200) and the baud rate at which it responds with valid sensor data
+     * is used.
+     * <p>Note: Probing starts the OI of the roomba (passive mode).</p>
+     * @param portId Name of serial port.
+     * @param baudRate Baud rate (e.g. BAUDRATE_115200, BAUDRATE_19200 or BAUDRATE_AUTO)
+     * @return True on success, False on failure.
+     * @throws IllegalArgumentException If the baud rate is negative.
+     */
+    public boolean connect(String portId, int baudRate) throws IllegalArgumentException {
+
+        // Validate argument values
+        if (baudRate < 0)
+            throw new IllegalArgumentException("Baud rate should be positive (or BAUDRATE_AUTO)");
+
         portName = portId;
         log.info("Connecting to port: '" + portName + "'.");
 
+        if (baudRate == BAUDRATE_AUTO) {
+            baudRate = detectBaudRate(portId);
+            if (baudRate == BAUDRATE_AUTO) {
+                log.error("No roomba responded on port: '" + portName + "'.");
+                connected = false;
+                return false;
+            }
+        }
+        this.baudRate = baudRate;
+
         connected = open_port();
 
         return connected;
     }
 
+    /**
+     * Connect again using the baud rate of the previous connection.
+     * @param portId Name of serial port.
+     * @return True on success, False on failure.
+     */
+    @Override
+    boolean reconnect(String portId) {
+        return connect(portId, baudRate);
+    }
+
+    /**
+     * Get the baud rate of the (last) connection.
+     * @return Baud rate.
+     */
+    public int baudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Set the time to wait for a response of the roomba when probing a baud rate.
+     * @param millis Probe timeout in milliseconds (min. 10ms)
+     * @throws IllegalArgumentException If the timeout is smaller than 10ms.
+     */
+    public void setProbeTimeout(int millis) throws IllegalArgumentException {
+        if (millis < 10)
+            throw new IllegalArgumentException("Probe timeout should be at least 10ms");
+        probeTimeout = millis;
+    }
+
+    /**
+     * Detect the baud rate of the roomba on the given serial port. At each supported baud rate (115200, 19200)
+     * all sensor data is requested, the first baud rate at which valid sensor data is received is returned.
+     * <p>Note: Probing starts the OI of the roomba (passive mode).</p>
+     * @param portId Name of serial port.
+     * @return Detected baud rate, or BAUDRATE_AUTO if the roomba did not respond.
+     */
+    public int detectBaudRate(String portId) {
+        if (!portExists(portId)) {
+            log.error("Port: '" + portId + "' does not exist.");
+            return BAUDRATE_AUTO;
+        }
+        for (int rate: PROBE_BAUDRATES) {
+            log.info("Probing port: '" + portId + "' at " + rate + " baud.");
+            if (probe(portId, rate, probeTimeout)) {
+                log.info("Roomba responded at " + rate + " baud.");
+                return rate;
+            }
+        }
+        return BAUDRATE_AUTO;
+    }
+
+    /**
+     * Find the serial ports with a roomba, probing at 115200 baud. All ports are probed concurrently,
+     * so discovery takes about one probe timeout regardless of the number of ports.
+     * <p>Note: Probing starts the OI of the roomba (passive mode).</p>
+     * @return Ports at which a roomba responded (empty list if none), sorted by name.
+     */
+    public String[] discover() {
+        Map<String, Integer> roombas = discover(BAUDRATE_115200);
+        return roombas.keySet().toArray(new String[roombas.size()]);
+    }
+
+    /**
+     * Find the serial ports with a roomba. Every available port (except the port of this connection)
+     * is probed on its own thread: all sensor data is requested and the port responds when valid
+     * sensor data is received within the probe timeout. When BAUDRATE_AUTO is used each port is
+     * probed at each supported baud rate (115200, 19200) in turn.
+     * <p>Note: Probing starts the OI of the roomba (passive mode).</p>
+     * @param baudRate Baud rate (e.g. BAUDRATE_115200, BAUDRATE_19200 or BAUDRATE_AUTO)
+     * @return Map of the ports at which a roomba responded to the baud rate it responded at,
+     * sorted by port name.
+     * @throws IllegalArgumentException If the baud rate is negative.
+     */
+    public Map<String, Integer> discover(int baudRate) throws IllegalArgumentException {
+
+        // Validate argument values
+        if (baudRate < 0)
+            throw new IllegalArgumentException("Baud rate should be positive (or BAUDRATE_AUTO)");
+
+        final int[] rates = baudRate == BAUDRATE_AUTO ? PROBE_BAUDRATES : new int[] { baudRate };
+        final int timeout = probeTimeout;
+        final Map<String, Integer> roombas = new TreeMap<String, Integer>();
+        final List<String> ports = new ArrayList<String>();
+        for (String portId: portList()) {
+            if (!(connected && portId.equals(portName)))
+                ports.add(portId);
+        }
+        if (ports.isEmpty())
+            return roombas;
+
+        log.info("Discovering roombas on " + ports.size() + " serial ports.");
+        ExecutorService executor = Executors.newFixedThreadPool(ports.size(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "roomba-discovery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Integer>> probes = new ArrayList<Future<Integer>>();
+            for (final String portId: ports) {
+                probes.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        for (int rate: rates) {
+                            if (probe(portId, rate, timeout))
+                                return rate;
+                        }
+                        return BAUDRATE_AUTO;
+                    }
+                }));
+            }
+            // Allow some time to open and close the ports on top of the probe timeouts
+            final long deadline = System.nanoTime() +
+                    TimeUnit.MILLISECONDS.toNanos((long)timeout * rates.length + DISCOVERY_MARGIN);
+            for (int i = 0; i < ports.size(); i++) {
+                try {
+                    int rate = probes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (rate != BAUDRATE_AUTO) {
+                        log.info("Roomba responded on port: '" + ports.get(i) + "' at " + rate + " baud.");
+                        roombas.put(ports.get(i), rate);
+                    }
+                } catch (TimeoutException ex) {
+                    log.debug("Probing port: '" + ports.get(i) + "' did not complete in time.");
+                } catch (ExecutionException ex) {
+                    log.debug("Probing port: '" + ports.get(i) + "' failed, error: " + ex.getMessage());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return roombas;
+    }
+
+    /**
+     * Probe for a roomba on a serial port by requesting all sensor data at the given baud rate.
+     * @param portId Name of serial port.
+     * @param rate Baud rate.
+     * @param timeout Time to wait for the response in milliseconds.
+     * @return True if valid sensor data is received.
+     */
+    static boolean probe(String portId, int rate, int timeout) {
+        SerialPort port = new SerialPort(portId);
+        try {
+            RoombaSerialTransport.openPort(port, rate);
+            port.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
+            port.writeBytes(PROBE_REQUEST);
+            return isValidSensorData(port.readBytes(SENSOR_PACKET_ALL_SIZE, timeout));
+        } catch (SerialPortTimeoutException ex) {
+            return false;
+        } catch (SerialPortException ex) {
+            log.debug("Probing port: '" + portId + "' failed, error: " + ex.getMessage());
+            return false;
+        } finally {
+            try {
+                if (port.isOpened()) port.closePort();
+            } catch (SerialPortException ex) {
+                log.error("Failed to close serial port: '" + portId + "', error: " + ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Disconnect serial port.
      */
@@ -88,10 +335,12 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
      * @return True on success, False on failure.
      */
     public boolean send(byte[] bytes) {
-        if (connected) {
+        // Read once, disconnect() may clear the port from another thread
+        SerialPort port = serialPort;
+        if (connected && port != null) {
             try {
                 log.debug("Sending byte array, of size: '" + bytes.length + "' to serial port.");
-                serialPort.writeBytes(bytes);
+                port.writeBytes(bytes);
                 return true;
             } catch (SerialPortException ex) {
                 log.error("Failed to send data to serial port, error: " + ex.getMessage());
@@ -109,10 +358,11 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
      * @return True on success, False on failure.
      */
     public boolean send(int b) {
-        if (connected) {
+        SerialPort port = serialPort;
+        if (connected && port != null) {
             try {
                 log.debug("Sending data: '" + b + "' to serial port.");
-                serialPort.writeInt(b);
+                port.writeInt(b);
                 return true;
             } catch (SerialPortException ex) {
                 log.error("Failed to send data to serial port, error: " + ex.getMessage());
@@ -130,12 +380,7 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
      * @return True if port exists, false if non existing port.
      */
     private boolean portExists(String portId) {
-        // Check if requested port exists
-        for (String portName: portList()) {
-            if (portName.equals(portId))
-                return true;
-        }
-        return false;
+        return portRegistry().contains(portId);
     }
 
     /**
@@ -147,15 +392,7 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
             boolean success;
             serialPort = new SerialPort(portName);
             try {
-                success = serialPort.openPort();
-
-                serialPort.setParams(
-                        SerialPort.BAUDRATE_115200,
-                        SerialPort.DATABITS_8,
-                        SerialPort.STOPBITS_1,
-                        SerialPort.PARITY_NONE);
-
-                serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
+                success = RoombaSerialTransport.openPort(serialPort, baudRate);
 
                 // Listen for incoming data
                 serialPort.addEventListener(this);
@@ -176,20 +413,13 @@ public class RoombaJSSCSerial extends RoombaJSSC implements SerialPortEventListe
     }
 
     public void serialEvent(SerialPortEvent serialPortEvent) {
-        if (serialPortEvent.isRXCHAR()) {
-            try {
-                byte[] data = serialPort.readBytes();
-                for(byte b: data) {
-                    sensorDataBuffer[sensorDataBufferIndex++] = b;
-                    if (sensorDataBufferIndex == SENSOR_PACKET_ALL_SIZE) {
-                        log.debug("Received sensor data packet.");
-                        currentSensorData = sensorDataBuffer;
-                        sensorDataBufferIndex = 0;
-                    }
-                }
-            } catch (SerialPortException ex) {
-                ex.printStackTrace();
+        try {
+            byte[] data = RoombaSerialTransport.readEvent(serialPort, serialPortEvent);
+            if (data != null) {
+                receive(data, data.length);
             }
+        } catch (SerialPortException ex) {
+            log.error("Failed to read data from serial port, error: " + ex.getMessage());
         }
     }
 }
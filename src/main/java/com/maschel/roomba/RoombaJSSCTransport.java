@@ -0,0 +1,155 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RoombaJSSC implementation that communicates with the roomba using a RoombaTransport.
+ */
+public class RoombaJSSCTransport extends RoombaJSSC {
+
+    private final RoombaTransport transport;
+
+    private final RoombaTransport.Receiver receiver = new RoombaTransport.Receiver() {
+        @Override
+        public void received(ByteBuffer data) {
+            receive(data);
+        }
+    };
+
+    private String portName = null;
+
+    /**
+     * Create a RoombaJSSC using the given transport.
+     * @param transport Transport to communicate with the roomba.
+     * @throws IllegalArgumentException If the transport is null.
+     */
+    public RoombaJSSCTransport(RoombaTransport transport) throws IllegalArgumentException {
+        if (transport == null)
+            throw new IllegalArgumentException("Transport should not be null");
+        this.transport = transport;
+    }
+
+    /**
+     * Get the transport used to communicate with the roomba.
+     * @return Transport.
+     */
+    public RoombaTransport transport() {
+        return transport;
+    }
+
+    /**
+     * Get the list of available ports of the transport.
+     * @return String[] of ports.
+     */
+    public String[] portList() {
+        String[] portNames = transport.portList();
+        return portNames != null ? portNames : new String[] {};
+    }
+
+    /**
+     * Connect to the roomba using the transport.
+     * @param portId Name of the port.
+     * @return True on success, False on failure.
+     */
+    public boolean connect(String portId) {
+        portName = portId;
+        log.info("Connecting to port: '" + portName + "'.");
+        try {
+            transport.open(portId, receiver);
+            connected = true;
+            log.info("Successfully opened port.");
+        } catch (IOException ex) {
+            log.error("Error opening port, error: " + ex.getMessage());
+            connected = false;
+        }
+        return connected;
+    }
+
+    /**
+     * Disconnect from the roomba, closes the transport.
+     */
+    public void disconnect() {
+        try {
+            transport.close();
+            log.info("Closing port: '" + portName + "'");
+        } catch (IOException ex) {
+            log.error("Failed to close port: '" + portName + "', error: " + ex.getMessage());
+        }
+        connected = false;
+    }
+
+    /**
+     * Send byte[] using the transport.
+     * @param bytes Bytes to send.
+     * @return True on success, False on failure.
+     */
+    public boolean send(byte[] bytes) {
+        return send(bytes, bytes.length);
+    }
+
+    /**
+     * Send the first bytes of a byte[] using the transport, without copying them.
+     * @param bytes Bytes to send.
+     * @param length Number of bytes to send.
+     * @return True on success, False on failure.
+     */
+    @Override
+    boolean send(byte[] bytes, int length) {
+        if (connected) {
+            try {
+                log.debug("Sending byte array, of size: '" + length + "' to port.");
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                while (buffer.hasRemaining()) {
+                    transport.write(buffer);
+                }
+                return true;
+            } catch (IOException ex) {
+                log.error("Failed to send data to port, error: " + ex.getMessage());
+                return false;
+            }
+        } else {
+            log.error("Port not connected, use connect() first.");
+            return false;
+        }
+    }
+
+    /**
+     * Send integer using the transport.
+     * @param b Integer to send.
+     * @return True on success, False on failure.
+     */
+    public boolean send(int b) {
+        return send(SINGLE_BYTE_COMMANDS[b & 0xff]);
+    }
+}
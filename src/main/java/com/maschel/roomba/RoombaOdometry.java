@@ -0,0 +1,283 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pose estimator that integrates the wheel encoder counts of every sensor data packet.
+ *
+ * The 16 bit encoder counts of the roomba wrap around at 65535, the odometry adds the (signed)
+ * difference with the previous packet to 64 bit totals, so no counts are lost as long as a wheel
+ * turns less than 32767 counts (about 14 meter) between two packets. Unlike distanceTraveled() and
+ * angleTurned(), the pose does not depend on how often the sensor data is requested.
+ *
+ * The poses of the last packets are kept, so the pose at any time in that period can be
+ * interpolated, e.g. to match the pose with the time of a camera frame.
+ *
+ * Usage:
+ *
+ * RoombaOdometry odometry = new RoombaOdometry();
+ * roomba.setOdometry(odometry);
+ * roomba.stream();
+ * // ...
+ * RoombaPose pose = odometry.pose();
+ * System.out.println(pose.x() + ", " + pose.y());
+ */
+public class RoombaOdometry {
+
+    // Roomba 500/600 series: 508.8 counts per revolution of a 72 mm wheel, 235 mm between the wheels
+    public static final double DEFAULT_MM_PER_COUNT = 72.0 * Math.PI / 508.8;
+    public static final double DEFAULT_WHEEL_BASE = 235.0;
+
+    private static final int DEFAULT_HISTORY_SIZE = 64;
+    private static final int COUNTS_RANGE = 0x10000;
+
+    private final double mmPerCount;
+    private final double wheelBase;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Last encoder counts, -1 until the first packet
+    private int lastLeftCounts = -1;
+    private int lastRightCounts = -1;
+    private long totalLeftCounts = 0;
+    private long totalRightCounts = 0;
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+
+    // Ring buffer of the poses of the last packets (time, x, y, heading)
+    private final long[] historyTime;
+    private final double[] historyX;
+    private final double[] historyY;
+    private final double[] historyHeading;
+    private int historyStart = 0;
+    private int historyLength = 0;
+
+    /**
+     * Create an odometry with the dimensions of the Roomba 500/600 series.
+     */
+    public RoombaOdometry() {
+        this(DEFAULT_MM_PER_COUNT, DEFAULT_WHEEL_BASE, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Create an odometry.
+     * @param mmPerCount Distance traveled by a wheel per encoder count (mm).
+     * @param wheelBase Distance between the wheels (mm).
+     * @param historySize Number of poses kept for interpolation.
+     * @throws IllegalArgumentException When a dimension or the history size is not positive.
+     */
+    public RoombaOdometry(double mmPerCount, double wheelBase, int historySize) {
+        // Validate argument values
+        if (!(mmPerCount > 0)) {
+            throw new IllegalArgumentException("Distance per encoder count should be positive");
+        }
+        if (!(wheelBase > 0)) {
+            throw new IllegalArgumentException("Wheel base should be positive");
+        }
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("History size should be at least 1");
+        }
+        this.mmPerCount = mmPerCount;
+        this.wheelBase = wheelBase;
+        historyTime = new long[historySize];
+        historyX = new double[historySize];
+        historyY = new double[historySize];
+        historyHeading = new double[historySize];
+    }
+
+    /**
+     * Integrate the encoder counts of a sensor data packet. Called by the roomba for every received
+     * packet (see RoombaJSSC.setOdometry()), the first packet only sets the reference counts.
+     * @param time Time of the packet in nanoseconds (System.nanoTime()).
+     * @param leftCounts Left encoder counts (0-65535).
+     * @param rightCounts Right encoder counts (0-65535).
+     */
+    public void update(long time, int leftCounts, int rightCounts) {
+        lock.lock();
+        try {
+            if (lastLeftCounts >= 0) {
+                final int left = countsDelta(lastLeftCounts, leftCounts);
+                final int right = countsDelta(lastRightCounts, rightCounts);
+                totalLeftCounts += left;
+                totalRightCounts += right;
+                if (left != 0 || right != 0) {
+                    final double leftDistance = left * mmPerCount;
+                    final double rightDistance = right * mmPerCount;
+                    final double delta = (rightDistance - leftDistance) / wheelBase;
+                    final double forward = (leftDistance + rightDistance) / 2;
+                    x += forward * Math.cos(heading + delta / 2);
+                    y += forward * Math.sin(heading + delta / 2);
+                    heading += delta;
+                }
+            }
+            lastLeftCounts = leftCounts & 0xffff;
+            lastRightCounts = rightCounts & 0xffff;
+            addHistory(time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reset the pose to the origin, heading 0. The encoder count totals are kept.
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            x = 0;
+            y = 0;
+            heading = 0;
+            if (historyLength > 0) {
+                // Keep the time of the last packet
+                final long time = historyTime[index(historyLength - 1)];
+                historyLength = 0;
+                addHistory(time);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the pose of the last packet.
+     * @return Pose, time 0 if no packet is received yet.
+     */
+    public RoombaPose pose() {
+        lock.lock();
+        try {
+            final long time = historyLength > 0 ? historyTime[index(historyLength - 1)] : 0;
+            return new RoombaPose(time, x, y, heading);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the pose at the given time, interpolated between the poses of the packets before and after
+     * that time. The pose is not extrapolated: before the oldest kept pose the oldest pose is returned,
+     * after the last packet the pose of the last packet.
+     * @param time Time in nanoseconds (System.nanoTime()).
+     * @return Pose at the given time.
+     */
+    public RoombaPose poseAt(long time) {
+        lock.lock();
+        try {
+            if (historyLength == 0 || time - historyTime[index(historyLength - 1)] >= 0)
+                return pose();
+            int i = historyLength - 1;
+            while (i > 0 && time - historyTime[index(i - 1)] < 0) {
+                i--;
+            }
+            final int after = index(i);
+            if (i == 0)
+                return new RoombaPose(historyTime[after], historyX[after], historyY[after], historyHeading[after]);
+            final int before = index(i - 1);
+            if (historyTime[after] == historyTime[before])
+                return new RoombaPose(time, historyX[after], historyY[after], historyHeading[after]);
+            final double t = (double)(time - historyTime[before]) / (historyTime[after] - historyTime[before]);
+            return new RoombaPose(time,
+                    historyX[before] + t * (historyX[after] - historyX[before]),
+                    historyY[before] + t * (historyY[after] - historyY[before]),
+                    historyHeading[before] + t * (historyHeading[after] - historyHeading[before]));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the total encoder counts of the left wheel since the first packet.
+     * @return Counts (negative when driven backward).
+     */
+    public long totalCountsLeft() {
+        lock.lock();
+        try {
+            return totalLeftCounts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the total encoder counts of the right wheel since the first packet.
+     * @return Counts (negative when driven backward).
+     */
+    public long totalCountsRight() {
+        lock.lock();
+        try {
+            return totalRightCounts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the total distance traveled since the first packet, the average of both wheels.
+     * @return Distance in mm (negative when driven backward).
+     */
+    public double distance() {
+        lock.lock();
+        try {
+            return (totalLeftCounts + totalRightCounts) * mmPerCount / 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the signed difference of two encoder counts, taking the wraparound at 65535 into account.
+     * @param previous Previous counts.
+     * @param counts Current counts.
+     * @return Difference (-32768 - 32767).
+     */
+    static int countsDelta(int previous, int counts) {
+        int delta = (counts - previous) & (COUNTS_RANGE - 1);
+        return delta >= COUNTS_RANGE / 2 ? delta - COUNTS_RANGE : delta;
+    }
+
+    private void addHistory(long time) {
+        final int i;
+        if (historyLength < historyTime.length) {
+            i = index(historyLength++);
+        } else {
+            i = historyStart;
+            historyStart = index(1);
+        }
+        historyTime[i] = time;
+        historyX[i] = x;
+        historyY[i] = y;
+        historyHeading[i] = heading;
+    }
+
+    private int index(int i) {
+        return (historyStart + i) % historyTime.length;
+    }
+}
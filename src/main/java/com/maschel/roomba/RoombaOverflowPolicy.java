@@ -0,0 +1,50 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+/**
+ * What to do when a command is sent while the outbound command queue is full.
+ */
+public enum RoombaOverflowPolicy {
+    /**
+     * Wait until the queue has room for the command. When the queue is drained by an executor,
+     * the sender writes the queued commands itself.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued command (that is not a coalesced drive, motor or LED command).
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new command, unless it is a safety command (start, mode, stop, reset, power
+     * or drive commands), which is queued anyway.
+     */
+    DROP_NON_SAFETY
+}
@@ -0,0 +1,399 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import jssc.SerialPortList;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of the available serial ports.
+ *
+ * The ports are enumerated once, after which the registry is kept up to date by watching the
+ * device directory (/dev) for serial devices that are added or removed. Listing the ports and
+ * checking if a port exists do not rescan the devices. Listeners are notified when a port is
+ * added or removed, e.g. to connect to a roomba as soon as its adapter is plugged in.
+ * <p>Note: When the device directory can not be watched (e.g. on Windows) the ports are
+ * enumerated again when the list is older than 1 second.</p>
+ */
+public class RoombaPortRegistry implements Closeable {
+
+    final static Logger log = Logger.getLogger(RoombaPortRegistry.class);
+
+    // Serial device names (in /dev), as used by jssc
+    private static final Pattern LINUX_PORT_NAMES = RoombaTtyTransport.TTY_NAMES;
+    private static final Pattern MAC_PORT_NAMES = Pattern.compile("tty\\..+");
+
+    // Maximum age of the port list when the device directory is not watched
+    private static final long RESCAN_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // Guards the creation of the shared registry, the scan does not hold the class monitor
+    private static final ReentrantLock sharedLock = new ReentrantLock();
+    private static volatile RoombaPortRegistry shared = null;
+
+    /**
+     * Listener of added and removed ports, called by the watching thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a port is added.
+         * @param portId Name of the port.
+         */
+        void portAdded(String portId);
+
+        /**
+         * Called when a port is removed.
+         * @param portId Name of the port.
+         */
+        void portRemoved(String portId);
+    }
+
+    /**
+     * Enumerates the available ports.
+     */
+    interface Scanner {
+        String[] scan();
+    }
+
+    private final Scanner scanner;
+    private final Path directory;
+    private final Pattern portNames;
+
+    // Guards updates of the ports
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<String> ports = new TreeSet<String>();
+    private volatile String[] portList = new String[] {};
+    private volatile long lastScan = 0;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile WatchService watchService = null;
+
+    /**
+     * Create a registry of the serial ports of this system, starts watching the device directory.
+     */
+    public RoombaPortRegistry() {
+        this(new Scanner() {
+            public String[] scan() {
+                return SerialPortList.getPortNames();
+            }
+        }, Paths.get("/dev"), systemPortNames());
+    }
+
+    /**
+     * Create a registry.
+     * @param scanner Enumerates the available ports.
+     * @param directory Directory of the port devices to watch, or null to not watch.
+     * @param portNames File names (in the directory) of the ports, or null to not watch.
+     */
+    RoombaPortRegistry(Scanner scanner, Path directory, Pattern portNames) {
+        this.scanner = scanner;
+        this.directory = directory;
+        this.portNames = portNames;
+        if (directory != null && portNames != null && Files.isDirectory(directory))
+            watch();
+        refresh();
+    }
+
+    /**
+     * Get the registry shared by all serial roombas and transports, created on first use.
+     * @return Shared registry.
+     */
+    public static RoombaPortRegistry shared() {
+        RoombaPortRegistry registry = shared;
+        if (registry != null)
+            return registry;
+        sharedLock.lock();
+        try {
+            if (shared == null)
+                shared = new RoombaPortRegistry();
+            return shared;
+        } finally {
+            sharedLock.unlock();
+        }
+    }
+
+    /**
+     * Get the names of the serial ports of this operating system.
+     * @return Pattern of the file names in /dev, or null if the ports are not in /dev.
+     */
+    private static Pattern systemPortNames() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("linux"))
+            return LINUX_PORT_NAMES;
+        if (os.contains("mac"))
+            return MAC_PORT_NAMES;
+        return null;
+    }
+
+    /**
+     * Get the list of available ports.
+     * @return String[] of ports (empty list if none), sorted by name.
+     */
+    public String[] portList() {
+        if (!isWatching() && System.nanoTime() - lastScan > RESCAN_INTERVAL)
+            refresh();
+        return portList.clone();
+    }
+
+    /**
+     * Check if a port exists. When the port is not known the ports are enumerated again,
+     * to find a port of which the add event is not processed yet.
+     * @param portId Name of the port.
+     * @return True if the port exists.
+     */
+    public boolean contains(String portId) {
+        lock.lock();
+        try {
+            if (ports.contains(portId))
+                return true;
+        } finally {
+            lock.unlock();
+        }
+        refresh();
+        lock.lock();
+        try {
+            return ports.contains(portId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if the device directory is watched for added and removed ports.
+     * @return True if watched.
+     */
+    public boolean isWatching() {
+        return watchService != null;
+    }
+
+    /**
+     * Add a listener of added and removed ports.
+     * @param listener Listener.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     * @param listener Listener.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Enumerate the available ports again, listeners are notified of the changes.
+     */
+    public void refresh() {
+        String[] scanned = scanner.scan();
+        Set<String> current = new TreeSet<String>();
+        if (scanned != null) {
+            for (String portId: scanned) {
+                current.add(portId);
+            }
+        }
+        List<String> added = new ArrayList<String>();
+        List<String> removed = new ArrayList<String>();
+        lock.lock();
+        try {
+            for (String portId: current) {
+                if (!ports.contains(portId))
+                    added.add(portId);
+            }
+            for (String portId: ports) {
+                if (!current.contains(portId))
+                    removed.add(portId);
+            }
+            ports.removeAll(removed);
+            ports.addAll(added);
+            update();
+            lastScan = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        for (String portId: removed) {
+            notifyRemoved(portId);
+        }
+        for (String portId: added) {
+            notifyAdded(portId);
+        }
+    }
+
+    /**
+     * Update the port list after the ports are changed, should be called with the lock held.
+     */
+    private void update() {
+        portList = ports.toArray(new String[ports.size()]);
+    }
+
+    /**
+     * Start watching the device directory on a (daemon) thread.
+     */
+    private void watch() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException ex) {
+            log.error("Failed to watch directory: '" + directory + "', error: " + ex.getMessage());
+            closeWatchService();
+            return;
+        }
+        final WatchService service = watchService;
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                processEvents(service);
+            }
+        }, "roomba-port-registry");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watch loop of the watching thread, runs until the watch service is closed.
+     * @param service Watch service.
+     */
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event: key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        refresh();
+                        continue;
+                    }
+                    final Path name = (Path)event.context();
+                    if (!portNames.matcher(name.toString()).matches())
+                        continue;
+                    final String portId = directory.resolve(name).toString();
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        portAdded(portId);
+                    } else {
+                        portRemoved(portId);
+                    }
+                }
+                if (!key.reset()) {
+                    log.error("Directory: '" + directory + "' is no longer watched.");
+                    closeWatchService();
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // Closed by close()
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void portAdded(String portId) {
+        lock.lock();
+        try {
+            if (!ports.add(portId))
+                return;
+            update();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Port added: '" + portId + "'.");
+        notifyAdded(portId);
+    }
+
+    private void portRemoved(String portId) {
+        lock.lock();
+        try {
+            if (!ports.remove(portId))
+                return;
+            update();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Port removed: '" + portId + "'.");
+        notifyRemoved(portId);
+    }
+
+    private void notifyAdded(String portId) {
+        for (Listener listener: listeners) {
+            try {
+                listener.portAdded(portId);
+            } catch (RuntimeException ex) {
+                log.error("Port listener failed, error: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void notifyRemoved(String portId) {
+        for (Listener listener: listeners) {
+            try {
+                listener.portRemoved(portId);
+            } catch (RuntimeException ex) {
+                log.error("Port listener failed, error: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ex) {
+                // Ignore, not watching anymore
+            }
+        }
+    }
+
+    /**
+     * Stop watching the device directory, the port list is enumerated again when it is used.
+     */
+    public void close() {
+        closeWatchService();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+/**
+ * Position and heading of the roomba at a point in time, estimated by RoombaOdometry.
+ */
+public final class RoombaPose {
+
+    private final long time;
+    private final double x;
+    private final double y;
+    private final double heading;
+
+    public RoombaPose(long time, double x, double y, double heading) {
+        this.time = time;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    /**
+     * Get the time of this pose.
+     * @return Time in nanoseconds (System.nanoTime()).
+     */
+    public long time() {
+        return time;
+    }
+
+    /**
+     * Get the x position (forward at the start of the odometry).
+     * @return X position in mm.
+     */
+    public double x() {
+        return x;
+    }
+
+    /**
+     * Get the y position (left at the start of the odometry).
+     * @return Y position in mm.
+     */
+    public double y() {
+        return y;
+    }
+
+    /**
+     * Get the heading (counter-clockwise), not normalized: a full turn adds 2 pi.
+     * @return Heading in radians.
+     */
+    public double heading() {
+        return heading;
+    }
+
+    @Override
+    public String toString() {
+        return "RoombaPose(x: " + x + ", y: " + y + ", heading: " + heading + ")";
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Preallocated byte ring buffer used by the receive path.
+ *
+ * Incoming serial data is written into the ring as it arrives and the frame parser
+ * reads complete frames out of it, so no memory is allocated in steady state.
+ * <p>Note: This class is not thread safe, it should only be accessed by the receiving thread.</p>
+ */
+class RoombaRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Create a ring buffer.
+     * @param capacity Capacity in bytes, must be a power of two.
+     * @throws IllegalArgumentException If the capacity is not a power of two.
+     */
+    RoombaRingBuffer(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("Ring buffer capacity should be a power of two");
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the number of bytes that can be read.
+     * @return Number of readable bytes.
+     */
+    int available() {
+        return size;
+    }
+
+    /**
+     * Get the capacity of the buffer.
+     * @return Capacity in bytes.
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Write bytes into the buffer. If the buffer runs full the oldest bytes are overwritten.
+     * @param src Source array.
+     * @param offset Offset in the source array.
+     * @param length Number of bytes to write.
+     * @return Number of (old) bytes that were overwritten.
+     */
+    int write(byte[] src, int offset, int length) {
+        int dropped = 0;
+        if (length > buffer.length) {
+            // Only the tail of the data fits
+            dropped = size + length - buffer.length;
+            offset += length - buffer.length;
+            length = buffer.length;
+            head = 0;
+            size = 0;
+        }
+        int overflow = size + length - buffer.length;
+        if (overflow > 0) {
+            skip(overflow);
+            dropped += overflow;
+        }
+        int tail = (head + size) & mask;
+        int first = Math.min(length, buffer.length - tail);
+        System.arraycopy(src, offset, buffer, tail, first);
+        System.arraycopy(src, offset + first, buffer, 0, length - first);
+        size += length;
+        return dropped;
+    }
+
+    /**
+     * Write the remaining bytes of a ByteBuffer into the buffer. If the buffer runs full the oldest
+     * bytes are overwritten.
+     * @param src Source buffer, its position is advanced to its limit.
+     * @return Number of (old) bytes that were overwritten.
+     */
+    int write(ByteBuffer src) {
+        int length = src.remaining();
+        if (src.hasArray()) {
+            int dropped = write(src.array(), src.arrayOffset() + src.position(), length);
+            ((Buffer) src).position(src.limit());
+            return dropped;
+        }
+        int dropped = 0;
+        if (length > buffer.length) {
+            // Only the tail of the data fits
+            dropped = size + length - buffer.length;
+            ((Buffer) src).position(src.position() + length - buffer.length);
+            length = buffer.length;
+            head = 0;
+            size = 0;
+        }
+        int overflow = size + length - buffer.length;
+        if (overflow > 0) {
+            skip(overflow);
+            dropped += overflow;
+        }
+        int tail = (head + size) & mask;
+        int first = Math.min(length, buffer.length - tail);
+        src.get(buffer, tail, first);
+        src.get(buffer, 0, length - first);
+        size += length;
+        return dropped;
+    }
+
+    /**
+     * Get a byte relative to the read position without consuming it.
+     * @param index Index relative to the read position (0 - available()-1).
+     * @return Byte at index.
+     */
+    byte peek(int index) {
+        return buffer[(head + index) & mask];
+    }
+
+    /**
+     * Read (and consume) bytes from the buffer.
+     * @param dst Destination array.
+     * @param offset Offset in the destination array.
+     * @param length Number of bytes to read, should not exceed available().
+     */
+    void read(byte[] dst, int offset, int length) {
+        int first = Math.min(length, buffer.length - head);
+        System.arraycopy(buffer, head, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, length - first);
+        skip(length);
+    }
+
+    /**
+     * Discard bytes from the read position.
+     * @param length Number of bytes to discard.
+     */
+    void skip(int length) {
+        length = Math.min(length, size);
+        head = (head + length) & mask;
+        size -= length;
+    }
+
+    /**
+     * Discard all bytes in the buffer.
+     */
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+}
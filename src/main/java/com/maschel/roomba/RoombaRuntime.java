@@ -0,0 +1,204 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs roomba control loops, every control loop runs on its own (virtual) thread.
+ *
+ * On Java 21+ control loops run on virtual threads, so thousands of roombas can be controlled
+ * concurrently using the blocking RoombaJSSC API (sleep(), awaitSensorData(), send) with a few
+ * carrier threads. On older Java versions platform (daemon) threads are used.
+ * <p>Use threadFactory() for the reader threads of transports (e.g. RoombaTtyTransport) and executor()
+ * for batched writes to also receive and write data on virtual threads.</p>
+ */
+public class RoombaRuntime implements Closeable {
+
+    final static Logger log = Logger.getLogger(RoombaRuntime.class);
+
+    private static final String THREAD_NAME = "roomba-loop-";
+
+    private final boolean virtual;
+    private final ThreadFactory threadFactory;
+    private final ExecutorService executor;
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * Create a runtime, uses virtual threads when available.
+     */
+    public RoombaRuntime() {
+        this(true);
+    }
+
+    /**
+     * Create a runtime.
+     * @param useVirtualThreads True to use virtual threads when available, false to always use platform threads.
+     */
+    public RoombaRuntime(boolean useVirtualThreads) {
+        ThreadFactory factory = useVirtualThreads ? virtualThreadFactory(THREAD_NAME) : null;
+        virtual = factory != null;
+        if (factory == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            factory = new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+        threadFactory = factory;
+        executor = threadPerTaskExecutor(factory);
+        log.info("Roomba runtime uses " + (virtual ? "virtual" : "platform") + " threads.");
+    }
+
+    /**
+     * Check if virtual threads are available (Java 21+).
+     * @return True if virtual threads are available.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return virtualThreadFactory(THREAD_NAME) != null;
+    }
+
+    /**
+     * Check if this runtime uses virtual threads.
+     * @return True if control loops run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Get the factory of the threads of this runtime, e.g. for the reader threads of transports.
+     * @return Thread factory.
+     */
+    public ThreadFactory threadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Get the executor of this runtime, every task runs on its own (virtual) thread. Use it for batched
+     * writes (setBatchedWrites(executor)) to write commands without a writer thread per roomba.
+     * @return Executor.
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Start a control loop on its own thread. The loop should stop when its thread is interrupted
+     * (close() interrupts all control loops), note that sleep() and awaitSensorData() return early
+     * when the thread is interrupted.
+     * @param controlLoop Control loop.
+     * @return Future of the control loop, cancel(true) interrupts the loop.
+     * @throws java.util.concurrent.RejectedExecutionException If the runtime is closed.
+     */
+    public Future<?> start(final Runnable controlLoop) {
+        return executor.submit(new Runnable() {
+            public void run() {
+                running.incrementAndGet();
+                try {
+                    controlLoop.run();
+                } catch (RuntimeException ex) {
+                    log.error("Control loop failed, error: " + ex.getMessage(), ex);
+                    throw ex;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the number of running control loops.
+     * @return Number of control loops.
+     */
+    public int running() {
+        return running.get();
+    }
+
+    /**
+     * Interrupt all control loops and wait (max. 1 second) until they are stopped.
+     */
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                log.error("Control loops did not stop within 1 second.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Create a virtual thread factory using Thread.ofVirtual() (Java 21+).
+     * @param name Thread name prefix.
+     * @return Virtual thread factory, or null if virtual threads are not available.
+     */
+    static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 0L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            // Not available (Java < 21 or preview not enabled)
+            return null;
+        }
+    }
+
+    /**
+     * Create an executor that starts a new thread for each task, using Executors.newThreadPerTaskExecutor()
+     * when available (Java 21+).
+     * @param threadFactory Thread factory.
+     * @return Executor.
+     */
+    static ExecutorService threadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService)method.invoke(null, threadFactory);
+        } catch (Exception ex) {
+            // Threads of a cached pool are reused, but never pooled longer than 60 seconds
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    }
+}
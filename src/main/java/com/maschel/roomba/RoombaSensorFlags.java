@@ -0,0 +1,158 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bit flags of all boolean sensor values of a sensor data frame, packed in a single long.
+ *
+ * The flags of a frame are packed once (see RoombaJSSC.sensorFlags()), after that a check of
+ * any combination of sensors is a single mask comparison:
+ *
+ * long flags = roomba.sensorFlags();
+ * if ((flags & RoombaSensorFlags.CLIFFS) != 0) {
+ *     // One of the cliff sensors sees a cliff
+ * }
+ * if ((flags & (RoombaSensorFlags.BUMP_LEFT | RoombaSensorFlags.LIGHT_BUMPER_LEFT)) != 0) {
+ *     // Obstacle on the left side
+ * }
+ */
+public final class RoombaSensorFlags {
+
+    // Bumps and wheel drops (packet 7)
+    public static final long BUMP_RIGHT                 = 1L << 0;
+    public static final long BUMP_LEFT                  = 1L << 1;
+    public static final long WHEEL_DROP_RIGHT           = 1L << 2;
+    public static final long WHEEL_DROP_LEFT            = 1L << 3;
+    // Wall, cliffs and virtual wall (packets 8-13)
+    public static final long WALL                       = 1L << 4;
+    public static final long CLIFF_LEFT                 = 1L << 5;
+    public static final long CLIFF_FRONT_LEFT           = 1L << 6;
+    public static final long CLIFF_FRONT_RIGHT          = 1L << 7;
+    public static final long CLIFF_RIGHT                = 1L << 8;
+    public static final long VIRTUAL_WALL               = 1L << 9;
+    // Overcurrents (packet 14)
+    public static final long SIDE_BRUSH_OVERCURRENT     = 1L << 10;
+    public static final long MAIN_BRUSH_OVERCURRENT     = 1L << 12;
+    public static final long WHEEL_OVERCURRENT_RIGHT    = 1L << 13;
+    public static final long WHEEL_OVERCURRENT_LEFT     = 1L << 14;
+    // Buttons (packet 18)
+    public static final long BUTTON_CLEAN               = 1L << 16;
+    public static final long BUTTON_SPOT                = 1L << 17;
+    public static final long BUTTON_DOCK                = 1L << 18;
+    public static final long BUTTON_MINUTE              = 1L << 19;
+    public static final long BUTTON_HOUR                = 1L << 20;
+    public static final long BUTTON_DAY                 = 1L << 21;
+    public static final long BUTTON_SCHEDULE            = 1L << 22;
+    public static final long BUTTON_CLOCK               = 1L << 23;
+    // Charging sources (packet 34)
+    public static final long INTERNAL_CHARGER           = 1L << 24;
+    public static final long HOMEBASE_CHARGER           = 1L << 25;
+    // Song playing (packet 37) and stasis (packet 58)
+    public static final long SONG_PLAYING               = 1L << 26;
+    public static final long STASIS                     = 1L << 27;
+    // Light bumper (packet 45)
+    public static final long LIGHT_BUMPER_LEFT          = 1L << 32;
+    public static final long LIGHT_BUMPER_FRONT_LEFT    = 1L << 33;
+    public static final long LIGHT_BUMPER_CENTER_LEFT   = 1L << 34;
+    public static final long LIGHT_BUMPER_CENTER_RIGHT  = 1L << 35;
+    public static final long LIGHT_BUMPER_FRONT_RIGHT   = 1L << 36;
+    public static final long LIGHT_BUMPER_RIGHT         = 1L << 37;
+
+    // Changes of the charging state (packet 21) and OI mode (packet 35), only used in the changes passed
+    // to sensor listeners (see RoombaJSSC.addSensorListener())
+    public static final long CHARGING_STATE_CHANGED     = 1L << 48;
+    public static final long MODE_CHANGED               = 1L << 49;
+
+    // Groups of flags
+    public static final long BUMPS = BUMP_RIGHT | BUMP_LEFT;
+    public static final long WHEEL_DROPS = WHEEL_DROP_RIGHT | WHEEL_DROP_LEFT;
+    public static final long CLIFFS = CLIFF_LEFT | CLIFF_FRONT_LEFT | CLIFF_FRONT_RIGHT | CLIFF_RIGHT;
+    public static final long OVERCURRENTS = SIDE_BRUSH_OVERCURRENT | MAIN_BRUSH_OVERCURRENT |
+            WHEEL_OVERCURRENT_RIGHT | WHEEL_OVERCURRENT_LEFT;
+    public static final long BUTTONS = BUTTON_CLEAN | BUTTON_SPOT | BUTTON_DOCK | BUTTON_MINUTE | BUTTON_HOUR |
+            BUTTON_DAY | BUTTON_SCHEDULE | BUTTON_CLOCK;
+    public static final long CHARGERS = INTERNAL_CHARGER | HOMEBASE_CHARGER;
+    public static final long LIGHT_BUMPERS = LIGHT_BUMPER_LEFT | LIGHT_BUMPER_FRONT_LEFT | LIGHT_BUMPER_CENTER_LEFT |
+            LIGHT_BUMPER_CENTER_RIGHT | LIGHT_BUMPER_FRONT_RIGHT | LIGHT_BUMPER_RIGHT;
+    // Sensors that put the roomba into passive mode (see RoombaJSSC.safetyFault())
+    public static final long SAFETY_FAULTS = BUMPS | WHEEL_DROPS | CLIFFS;
+
+    private RoombaSensorFlags() {}
+
+    /**
+     * Pack the boolean sensor values of a sensor data frame.
+     * @param data Sensor data (all sensors packet).
+     * @return Sensor flags.
+     */
+    static long pack(byte[] data) {
+        return pack(data[RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET],
+                (data[RoombaJSSC.SENSOR_WALL_OFFSET] != 0 ? WALL : 0) |
+                (data[RoombaJSSC.SENSOR_CLIFF_LEFT_OFFSET] != 0 ? CLIFF_LEFT : 0) |
+                (data[RoombaJSSC.SENSOR_CLIFF_FRONT_LEFT_OFFSET] != 0 ? CLIFF_FRONT_LEFT : 0) |
+                (data[RoombaJSSC.SENSOR_CLIFF_FRONT_RIGHT_OFFSET] != 0 ? CLIFF_FRONT_RIGHT : 0) |
+                (data[RoombaJSSC.SENSOR_CLIFF_RIGHT_OFFSET] != 0 ? CLIFF_RIGHT : 0) |
+                (data[RoombaJSSC.SENSOR_VIRTUAL_WALL_OFFSET] != 0 ? VIRTUAL_WALL : 0) |
+                (data[RoombaJSSC.SENSOR_SONG_PLAYING_OFFSET] != 0 ? SONG_PLAYING : 0) |
+                (data[RoombaJSSC.SENSOR_STASIS] != 0 ? STASIS : 0),
+                data[RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET], data[RoombaJSSC.SENSOR_BUTTONS_OFFSET],
+                data[RoombaJSSC.SENSOR_CHARGING_SOURCES_OFFSET], data[RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET]);
+    }
+
+    /**
+     * Pack the boolean sensor values of a sensor data frame in a buffer.
+     * @param buffer Buffer containing the sensor data.
+     * @param offset Absolute offset of the frame in the buffer.
+     * @return Sensor flags.
+     */
+    static long pack(ByteBuffer buffer, int offset) {
+        return pack(buffer.get(offset + RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET),
+                (buffer.get(offset + RoombaJSSC.SENSOR_WALL_OFFSET) != 0 ? WALL : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_CLIFF_LEFT_OFFSET) != 0 ? CLIFF_LEFT : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_CLIFF_FRONT_LEFT_OFFSET) != 0 ? CLIFF_FRONT_LEFT : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_CLIFF_FRONT_RIGHT_OFFSET) != 0 ? CLIFF_FRONT_RIGHT : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_CLIFF_RIGHT_OFFSET) != 0 ? CLIFF_RIGHT : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_VIRTUAL_WALL_OFFSET) != 0 ? VIRTUAL_WALL : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_SONG_PLAYING_OFFSET) != 0 ? SONG_PLAYING : 0) |
+                (buffer.get(offset + RoombaJSSC.SENSOR_STASIS) != 0 ? STASIS : 0),
+                buffer.get(offset + RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET),
+                buffer.get(offset + RoombaJSSC.SENSOR_BUTTONS_OFFSET),
+                buffer.get(offset + RoombaJSSC.SENSOR_CHARGING_SOURCES_OFFSET),
+                buffer.get(offset + RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET));
+    }
+
+    // Combine the bit field bytes with the flags of the single byte sensors
+    private static long pack(byte bumpsWheelDrops, long flags, byte overcurrents, byte buttons,
+                             byte chargingSources, byte lightBumper) {
+        return (bumpsWheelDrops & 0x0fL) | flags | ((overcurrents & 0x1dL) << 10) | ((buttons & 0xffL) << 16) |
+                ((chargingSources & 0x03L) << 24) | ((lightBumper & 0x3fL) << 32);
+    }
+}
@@ -0,0 +1,706 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight view of a sensor data frame (all sensors packet, 80 bytes) in a ByteBuffer.
+ *
+ * The frame does not copy or decode the sensor data, every getter reads its bytes from the
+ * buffer when called. The getters return the same values as the sensor getters of RoombaJSSC
+ * and share their offsets, masks and 16 bit decoding, see RoombaJSSC for the value ranges.
+ * A frame can be pointed at another buffer or offset with wrap(), so a single instance can be
+ * reused for every frame of a stream without allocating.
+ *
+ * Usage:
+ *
+ * RoombaSensorFrame frame = new RoombaSensorFrame();
+ * ByteBuffer buffer = ByteBuffer.allocate(RoombaSensorFrame.SIZE);
+ * while (condition) {
+ *     buffer.clear();
+ *     frame.wrap(roomba.readSensorData(buffer), 0);
+ *     System.out.println(frame.batteryVoltage());
+ * }
+ *
+ * Note: The frame is not thread safe, the buffer should not be modified while frame values are read.
+ */
+public final class RoombaSensorFrame {
+
+    /**
+     * Size of a sensor data frame in bytes.
+     */
+    public static final int SIZE = RoombaJSSC.SENSOR_PACKET_ALL_SIZE;
+
+    private ByteBuffer buffer = null;
+    private int offset = 0;
+
+    /**
+     * Create a frame that is not pointed at a buffer yet, use wrap() before reading values.
+     */
+    public RoombaSensorFrame() {}
+
+    /**
+     * Create a frame at the position of the given buffer.
+     * @param buffer Buffer containing the sensor data.
+     * @throws IllegalArgumentException When the buffer has less than SIZE bytes remaining.
+     */
+    public RoombaSensorFrame(ByteBuffer buffer) {
+        wrap(buffer);
+    }
+
+    /**
+     * Point this frame at the sensor data at the position of the given buffer. The position of the
+     * buffer is not changed.
+     * @param buffer Buffer containing the sensor data.
+     * @return This frame.
+     * @throws IllegalArgumentException When the buffer has less than SIZE bytes remaining.
+     */
+    public RoombaSensorFrame wrap(ByteBuffer buffer) {
+        return wrap(buffer, buffer.position());
+    }
+
+    /**
+     * Point this frame at the sensor data at the given offset of a buffer.
+     * @param buffer Buffer containing the sensor data.
+     * @param offset Absolute offset of the frame in the buffer.
+     * @return This frame.
+     * @throws IllegalArgumentException When the buffer has less than SIZE bytes at the offset.
+     */
+    public RoombaSensorFrame wrap(ByteBuffer buffer, int offset) {
+        // Validate argument values
+        if (offset < 0 || offset + SIZE > buffer.limit()) {
+            throw new IllegalArgumentException("Buffer should contain " + SIZE + " bytes at offset " + offset);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Get the buffer of this frame.
+     * @return Buffer, or null if the frame is not pointed at a buffer.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Get the offset of this frame in its buffer.
+     * @return Absolute offset in the buffer.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Copy the sensor data of this frame to a byte array.
+     * @param dst Destination array (at least SIZE bytes).
+     * @throws IllegalArgumentException When the array is too small.
+     */
+    public void copyTo(byte[] dst) {
+        // Validate argument values
+        if (dst.length < SIZE) {
+            throw new IllegalArgumentException("Destination should be at least " + SIZE + " bytes");
+        }
+        for (int i = 0; i < SIZE; i++) {
+            dst[i] = buffer.get(offset + i);
+        }
+    }
+
+    /**
+     * Check if a safety fault has occurred, this will put the roomba into passive mode.
+     * @return True if a safety fault has occurred
+     */
+    public boolean safetyFault() {
+        return (sensorFlags() & RoombaSensorFlags.SAFETY_FAULTS) != 0;
+    }
+
+    /**
+     * Get all boolean sensor values of this frame, packed in a single long (see RoombaSensorFlags).
+     * <p>Note: The flags are packed on every call, keep the result to check multiple sensors.</p>
+     * @return Sensor flags.
+     */
+    public long sensorFlags() {
+        return RoombaSensorFlags.pack(buffer, offset);
+    }
+
+    /**
+     * Get value of right bumper sensor.
+     * @return True if bumped right
+     */
+    public boolean bumpRight() {
+        return (get(RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET) & RoombaJSSC.SENSOR_BUMP_RIGHT_MASK) != 0;
+    }
+
+    /**
+     * Get value of left bumper sensor.
+     * @return True if bumped left
+     */
+    public boolean bumpLeft() {
+        return (get(RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET) & RoombaJSSC.SENSOR_BUMP_LEFT_MASK) != 0;
+    }
+
+    /**
+     * Get value of right wheel drop sensor.
+     * @return True if wheel drops right
+     */
+    public boolean wheelDropRight() {
+        return (get(RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET) & RoombaJSSC.SENSOR_WHEELDROP_RIGHT_MASK) != 0;
+    }
+
+    /**
+     * Get value of left wheel drop sensor.
+     * @return True if wheel drops left
+     */
+    public boolean wheelDropLeft() {
+        return (get(RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET) & RoombaJSSC.SENSOR_WHEELDROP_LEFT_MASK) != 0;
+    }
+
+    /**
+     * Get value of wall sensor.
+     * @return True if wall is seen
+     */
+    public boolean wall() {
+        return get(RoombaJSSC.SENSOR_WALL_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of cliff left sensor.
+     * @return True if cliff is seen on left side
+     */
+    public boolean cliffLeft() {
+        return get(RoombaJSSC.SENSOR_CLIFF_LEFT_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of cliff front left sensor.
+     * @return True if cliff is seen on front left
+     */
+    public boolean cliffFrontLeft() {
+        return get(RoombaJSSC.SENSOR_CLIFF_FRONT_LEFT_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of cliff front right sensor.
+     * @return True if cliff is seen on front right
+     */
+    public boolean cliffFrontRight() {
+        return get(RoombaJSSC.SENSOR_CLIFF_FRONT_RIGHT_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of cliff right sensor.
+     * @return True if cliff is seen on right side
+     */
+    public boolean cliffRight() {
+        return get(RoombaJSSC.SENSOR_CLIFF_RIGHT_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of virtual wall sensor.
+     * @return True if a virtual wall is detected
+     */
+    public boolean virtualWall() {
+        return get(RoombaJSSC.SENSOR_VIRTUAL_WALL_OFFSET) != 0;
+    }
+
+    /**
+     * Get value of side brush overcurrent sensor.
+     * @return True if side brush overcurrent
+     */
+    public boolean sideBrushOvercurrent() {
+        return (get(RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET) & RoombaJSSC.SENSOR_OVERCURRENT_SIDE_BRUSH_MASK) != 0;
+    }
+
+    /**
+     * Get value of main brush overcurrent sensor.
+     * @return True if main brush overcurrent
+     */
+    public boolean mainBrushOvercurrent() {
+        return (get(RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET) & RoombaJSSC.SENSOR_OVERCURRENT_MAIN_BRUSH_MASK) != 0;
+    }
+
+    /**
+     * Get value of right wheel overcurrent sensor.
+     * @return True if right wheel overcurrent
+     */
+    public boolean wheelOvercurrentRight() {
+        return (get(RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET) & RoombaJSSC.SENSOR_OVERCURRENT_RIGHT_WHEEL_MASK) != 0;
+    }
+
+    /**
+     * Get value of left wheel overcurrent sensor.
+     * @return True if left wheel overcurrent
+     */
+    public boolean wheelOvercurrentLeft() {
+        return (get(RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET) & RoombaJSSC.SENSOR_OVERCURRENT_LEFT_WHEEL_MASK) != 0;
+    }
+
+    /**
+     * Get the level of the dirt detect sensor.
+     * @return Dirt level (0-255)
+     */
+    public int dirtDetectLevel() {
+        return get(RoombaJSSC.SENSOR_DIRT_DETECT_OFFSET) & 0xff;
+    }
+
+    /**
+     * Get the character currently received by the omnidirectional receiver.
+     * @return Received character (0-255)
+     */
+    public int infraredCharacterOmni() {
+        return get(RoombaJSSC.SENSOR_INFRARED_CHAR_OMNI_OFFSET) & 0xff;
+    }
+
+    /**
+     * Get the character currently received by the left receiver.
+     * @return Received character (0-255)
+     */
+    public int infraredCharacterLeft() {
+        return get(RoombaJSSC.SENSOR_INFRARED_CHAR_LEFT_OFFSET) & 0xff;
+    }
+
+    /**
+     * Get the character currently received by the right receiver.
+     * @return Received character (0-225)
+     */
+    public int infraredCharacterRight() {
+        return get(RoombaJSSC.SENSOR_INFRARED_CHAR_RIGHT_OFFSET) & 0xff;
+    }
+
+    /**
+     * Check if the clean button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonCleanPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_CLEAN_MASK) != 0;
+    }
+
+    /**
+     * Check if the spot button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonSpotPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_SPOT_MASK) != 0;
+    }
+
+    /**
+     * Check if the dock button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonDockPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_DOCK_MASK) != 0;
+    }
+
+    /**
+     * Check if the minute button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonMinutePressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_MINUTE_MASK) != 0;
+    }
+
+    /**
+     * Check if the hour button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonHourPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_HOUR_MASK) != 0;
+    }
+
+    /**
+     * Check if the day button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonDayPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_DAY_MASK) != 0;
+    }
+
+    /**
+     * Check if the schedule button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonSchedulePressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_SCHEDULE_MASK) != 0;
+    }
+
+    /**
+     * Check if the clock button is pressed.
+     * @return True if pressed
+     */
+    public boolean buttonClockPressed() {
+        return (get(RoombaJSSC.SENSOR_BUTTONS_OFFSET) & RoombaJSSC.BUTTONS_CLOCK_MASK) != 0;
+    }
+
+    /**
+     * Get distance travelled in mm since the last sensor data request, capped at -32768 and 32767.
+     * @return Distance travelled in mm since the previous frame
+     */
+    public int distanceTraveled() {
+        return signed16(RoombaJSSC.SENSOR_DISTANCE_OFFSET);
+    }
+
+    /**
+     * Get the angle turned in degrees since the last sensor data request, capped at -32768 and 32767.
+     * @return Angle turned in degrees since the previous frame
+     */
+    public int angleTurned() {
+        return signed16(RoombaJSSC.SENSOR_ANGLE_OFFSET);
+    }
+
+    /**
+     * Get current charging state, see RoombaJSSC.chargingState() for the states.
+     * @return Charging state (0-5)
+     */
+    public int chargingState() {
+        return get(RoombaJSSC.SENSOR_CHARGING_STATE_OFFSET);
+    }
+
+    /**
+     * Get the voltage of the battery in millivolt (mV)
+     * @return battery voltage (0 - 65535 mV)
+     */
+    public int batteryVoltage() {
+        return unsigned16(RoombaJSSC.SENSOR_VOLTAGE_OFFSET);
+    }
+
+    /**
+     * Get the current in milliamps (mA) flowing into or out of roomba's battery. Negative currents indicate that the
+     * current is flowing out of the battery, as during normal running. Positive currents indicate that the current
+     * is flowing into the battery, as during charging.
+     * @return Current in milliamps (-32768, 32768 mA)
+     */
+    public int batteryCurrent() {
+        return signed16(RoombaJSSC.SENSOR_CURRENT_OFFSET);
+    }
+
+    /**
+     * Get the temperature of Roomba's battery in degrees Celsius.
+     * @return Battery temperature in degrees Celsius (-128, 127)
+     */
+    public int batteryTemperature() {
+        return get(RoombaJSSC.SENSOR_TEMPERATURE_OFFSET);
+    }
+
+    /**
+     * Get the estimated charge of the roomba's battery in milliamp-hours (mAh).
+     * @return Estimated battery charge (0 - 65535 mAh)
+     */
+    public int batteryCharge() {
+        return unsigned16(RoombaJSSC.SENSOR_BATTERY_CHARGE_OFFSET);
+    }
+
+    /**
+     * Get the estimated charge capacity of roomba's battery in milliamp-hours (mAh)
+     * @return Estimated charge capacity (0 - 65535 mAh)
+     */
+    public int batteryCapacity() {
+        return unsigned16(RoombaJSSC.SENSOR_BATTERY_CAPACITY_OFFSET);
+    }
+
+    /**
+     * Get the strength of the wall signal.
+     * @return Strength of wall signal (0-1023)
+     */
+    public int wallSignal() {
+       return unsigned16(RoombaJSSC.SENSOR_WALL_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the cliff left signal.
+     * @return Strength of cliff left signal(0-4095)
+     */
+    public int cliffSignalLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_CLIFF_LEFT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the cliff front left signal.
+     * @return Strength of cliff front left signal(0-4095)
+     */
+    public int cliffSignalFrontLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_CLIFF_FRONT_LEFT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the cliff front right signal.
+     * @return Strength of cliff front left signal(0-4095)
+     */
+    public int cliffSignalFrontRight() {
+        return unsigned16(RoombaJSSC.SENSOR_CLIFF_FRONT_RIGHT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the cliff right signal.
+     * @return Strength of cliff right signal(0-4095)
+     */
+    public int cliffSignalRight() {
+        return unsigned16(RoombaJSSC.SENSOR_CLIFF_RIGHT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Check if the internal charger is present and powered.
+     * @return True if present and powered.
+     */
+    public boolean internalChargerAvailable() {
+        return (get(RoombaJSSC.SENSOR_CHARGING_SOURCES_OFFSET) & RoombaJSSC.SENSOR_CHARGER_INTERNAL_MASK) != 0;
+    }
+
+    /**
+     * Check if the homebase charger is present and powered.
+     * @return True if present and powered.
+     */
+    public boolean homebaseChargerAvailable() {
+        return (get(RoombaJSSC.SENSOR_CHARGING_SOURCES_OFFSET) & RoombaJSSC.SENSOR_CHARGER_HOMEBASE_MASK) != 0;
+    }
+
+    /**
+     * Get the current OI mode, see RoombaJSSC.mode() for the modes.
+     * @return Current OI mode (0-3)
+     */
+    public int mode() {
+        return get(RoombaJSSC.SENSOR_OI_MODE_OFFSET);
+    }
+
+    /**
+     * Get the currently selected song.
+     * @return Selected song number (0-15)
+     */
+    public int songNumber() {
+        return get(RoombaJSSC.SENSOR_SONG_NUMBER_OFFSET);
+    }
+
+    /**
+     * Check if a song is playing.
+     * @return True if a song is playing.
+     */
+    public boolean songPlaying() {
+        return get(RoombaJSSC.SENSOR_SONG_PLAYING_OFFSET) != 0;
+    }
+
+    /**
+     * Get the velocity most recently requested with a Drive command.
+     * @return Requested velocity (-500 - 500mm/s)
+     */
+    public int requestedVelocity() {
+        return signed16(RoombaJSSC.SENSOR_REQUESTED_VELOCITY_OFFSET);
+    }
+
+    /**
+     * Get the radius most recently requested with a Drive command.
+     * @return Requested radius (-32768 - 32767mm)
+     */
+    public int requestedRadius() {
+        return signed16(RoombaJSSC.SENSOR_REQUESTED_RADIUS_OFFSET);
+    }
+
+    /**
+     * Get the right wheel velocity most recently requested with a Drive Direct command.
+     * @return Requested right wheel velocity (-500 - 500mm/s)
+     */
+    public int requestedVelocityRight() {
+        return signed16(RoombaJSSC.SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET);
+    }
+
+    /**
+     * Get the left wheel velocity most recently requested with a Drive Direct command.
+     * @return Requested left wheel velocity (-500 - 500mm/s)
+     */
+    public int requestedVelocityLeft() {
+        return signed16(RoombaJSSC.SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET);
+    }
+
+    /**
+     * Get the (cumulative) number of raw left encoder counts, rolls over to 0 after 65535.
+     * @return Cumulative left encoder counts (0-65535)
+     */
+    public int encoderCountsLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_LEFT_ENCODER_COUNTS_OFFSET);
+    }
+
+    /**
+     * Get the (cumulative) number of raw right encoder counts, rolls over to 0 after 65535.
+     * @return Cumulative right encoder counts (0-65535)
+     */
+    public int encoderCountsRight() {
+        return unsigned16(RoombaJSSC.SENSOR_RIGHT_ENCODER_COUNTS_OFFSET);
+    }
+
+    /**
+     * Check if the left light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperLeft() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_LEFT_MASK) != 0;
+    }
+
+    /**
+     * Check if the front left light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperFrontLeft() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_FRONT_LEFT_MASK) != 0;
+    }
+
+    /**
+     * Check if the center left light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperCenterLeft() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_CENTER_LEFT_MASK) != 0;
+    }
+
+    /**
+     * Check if the center right light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperCenterRight() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_CENTER_RIGHT_MASK) != 0;
+    }
+
+    /**
+     * Check if the front right light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperFrontRight() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_FRONT_RIGHT_MASK) != 0;
+    }
+
+    /**
+     * Check if the right light bumper detects an obstacle.
+     * @return True on obstacle
+     */
+    public boolean lightBumperRight() {
+        return (get(RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET) & RoombaJSSC.SENSOR_LIGHT_BUMPER_RIGHT_MASK) != 0;
+    }
+
+    /**
+     * Get the strength of the light bumper left signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_LEFT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the light bumper front left signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalFrontLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_FRONT_LEFT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the light bumper center left signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalCenterLeft() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_CENTER_LEFT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the light bumper center right signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalCenterRight() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_CENTER_RIGHT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the light bumper front right signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalFrontRight() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_FRONT_RIGHT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the strength of the light bumper right signal.
+     * @return Signal strength (0-4095)
+     */
+    public int lightBumperSignalRight() {
+        return unsigned16(RoombaJSSC.SENSOR_LIGHT_BUMPER_RIGHT_SIGNAL_OFFSET);
+    }
+
+    /**
+     * Get the current being drawn by the left wheel motor in milli Ampere (mA).
+     * @return Motor current in mA (-32768 - 32767 mA)
+     */
+    public int motorCurrentLeft() {
+        return signed16(RoombaJSSC.SENSOR_LEFT_MOTOR_CURRENT);
+    }
+
+    /**
+     * Get the current being drawn by the right wheel motor in milli Ampere (mA).
+     * @return Motor current in mA (-32768 - 32767 mA)
+     */
+    public int motorCurrentRight() {
+        return signed16(RoombaJSSC.SENSOR_RIGHT_MOTOR_CURRENT);
+    }
+
+    /**
+     * Get the current being drawn by the main brush motor in milli Ampere (mA).
+     * @return Motor current in mA (-32768 - 32767 mA)
+     */
+    public int motorCurrentMainBrush() {
+        return signed16(RoombaJSSC.SENSOR_MAIN_BRUSH_CURRENT);
+    }
+
+    /**
+     * Get the current being drawn by the side brush motor in milli Ampere (mA).
+     * @return Motor current in mA (-32768 - 32767 mA)
+     */
+    public int motorCurrentSideBrush() {
+        return signed16(RoombaJSSC.SENSOR_SIDE_BRUSH_CURRENT);
+    }
+
+    /**
+     * Check if the roomba is making forward progress (not turning, driving backward or standing still).
+     * @return True if making forward progress
+     */
+    public boolean stasis() {
+        return get(RoombaJSSC.SENSOR_STASIS) != 0;
+    }
+
+    private byte get(int index) {
+        return buffer.get(offset + index);
+    }
+
+    // Decode the big endian values independent of the byte order of the buffer
+    private int signed16(int index) {
+        return RoombaJSSC.signed16BitToInt(get(index), get(index + 1));
+    }
+
+    private int unsigned16(int index) {
+        return RoombaJSSC.unsigned16BitToInt(get(index), get(index + 1));
+    }
+}
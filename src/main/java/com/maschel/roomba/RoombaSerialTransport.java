@@ -0,0 +1,174 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import jssc.*;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * RoombaTransport implementation using a jssc serial port (8N1, no flow control).
+ *
+ * The port setup and the reading of received data are shared with RoombaJSSCSerial.
+ */
+public class RoombaSerialTransport implements RoombaTransport, SerialPortEventListener {
+
+    final static Logger log = Logger.getLogger(RoombaSerialTransport.class);
+
+    private final int baudRate;
+
+    private volatile SerialPort serialPort = null;
+    private RoombaTransport.Receiver receiver = null;
+
+    /**
+     * Create a serial transport using 115200 baud.
+     */
+    public RoombaSerialTransport() {
+        this(RoombaJSSCSerial.BAUDRATE_115200);
+    }
+
+    /**
+     * Create a serial transport.
+     * @param baudRate Baud rate (e.g. 115200 or 19200).
+     * @throws IllegalArgumentException If the baud rate is not positive.
+     */
+    public RoombaSerialTransport(int baudRate) throws IllegalArgumentException {
+        if (baudRate <= 0)
+            throw new IllegalArgumentException("Baud rate should be positive");
+        this.baudRate = baudRate;
+    }
+
+    public String[] portList() {
+        return RoombaPortRegistry.shared().portList();
+    }
+
+    public void open(String portId, RoombaTransport.Receiver receiver) throws IOException {
+        // Close a port that is still open, otherwise it is leaked
+        close();
+        SerialPort port = new SerialPort(portId);
+        try {
+            openPort(port, baudRate);
+            this.receiver = receiver;
+            serialPort = port;
+            port.addEventListener(this);
+        } catch (SerialPortException ex) {
+            serialPort = null;
+            try {
+                if (port.isOpened()) port.closePort();
+            } catch (SerialPortException closeEx) {
+                // Ignore, report the original error
+            }
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    public boolean isOpen() {
+        return serialPort != null;
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+        SerialPort port = serialPort;
+        if (port == null)
+            throw new IOException("Serial port not opened");
+        int length = src.remaining();
+        byte[] bytes;
+        if (src.hasArray() && src.arrayOffset() + src.position() == 0 && src.array().length == length) {
+            bytes = src.array();
+        } else {
+            bytes = new byte[length];
+            src.duplicate().get(bytes);
+        }
+        try {
+            port.writeBytes(bytes);
+        } catch (SerialPortException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        ((Buffer) src).position(src.limit());
+        return length;
+    }
+
+    public void close() throws IOException {
+        SerialPort port = serialPort;
+        serialPort = null;
+        if (port != null) {
+            try {
+                port.closePort();
+            } catch (SerialPortException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    public void serialEvent(SerialPortEvent serialPortEvent) {
+        SerialPort port = serialPort;
+        if (port != null) {
+            try {
+                byte[] data = readEvent(port, serialPortEvent);
+                if (data != null) {
+                    receiver.received(ByteBuffer.wrap(data));
+                }
+            } catch (SerialPortException ex) {
+                log.error("Failed to read data from serial port, error: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Open a serial port and set the port parameters (8N1, no flow control).
+     * @param port Serial port.
+     * @param baudRate Baud rate.
+     * @return Result of SerialPort.openPort().
+     * @throws SerialPortException If the port could not be opened or configured.
+     */
+    static boolean openPort(SerialPort port, int baudRate) throws SerialPortException {
+        boolean opened = port.openPort();
+        port.setParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        port.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
+        return opened;
+    }
+
+    /**
+     * Read the data received on a serial port.
+     * @param port Serial port.
+     * @param serialPortEvent Event of the port.
+     * @return Received bytes, or null if the event does not report received data.
+     * @throws SerialPortException If the read failed.
+     */
+    static byte[] readEvent(SerialPort port, SerialPortEvent serialPortEvent) throws SerialPortException {
+        if (!serialPortEvent.isRXCHAR() || serialPortEvent.getEventValue() <= 0)
+            return null;
+        // Only read the bytes this event reports
+        return port.readBytes(serialPortEvent.getEventValue());
+    }
+}
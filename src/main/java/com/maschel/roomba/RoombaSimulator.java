@@ -0,0 +1,726 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process simulator of the roomba Open Interface, used as RoombaTransport.
+ *
+ * The simulator understands all commands sent by RoombaJSSC, answers sensor queries (142, 149)
+ * with data in the same layout as a real roomba, streams sensor data (148) every 15ms and moves
+ * the roomba using a simple kinematic model (distance, angle, encoder counts and pose).
+ * <p>By default time only advances when advance() is called, so control loops can be tested
+ * faster than real-time. When created with a time scale the simulator advances on its own,
+ * following the wall clock multiplied by the time scale.</p>
+ */
+public class RoombaSimulator implements RoombaTransport {
+
+    /** OI mode: Off */
+    public static final int MODE_OFF        = 0;
+    /** OI mode: Passive */
+    public static final int MODE_PASSIVE    = 1;
+    /** OI mode: Safe */
+    public static final int MODE_SAFE       = 2;
+    /** OI mode: Full */
+    public static final int MODE_FULL       = 3;
+
+    // Roomba dimensions: distance between the wheels (mm) and encoder counts per mm
+    static final double WHEEL_BASE          = 235.0;
+    static final double COUNTS_PER_MM       = 508.8 / (72.0 * Math.PI);
+
+    // Stream interval (ms)
+    private static final int STREAM_INTERVAL = 15;
+
+    // Max command size: stream / query list of 255 packets
+    private static final int COMMAND_MAX_SIZE = 257;
+
+    // Guards all state
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final double timeScale;
+    private ScheduledExecutorService ticker = null;
+    private long lastTick = 0;
+
+    private RoombaTransport.Receiver receiver = null;
+    private boolean open = false;
+
+    // Received command (parsed when complete)
+    private final byte[] command = new byte[COMMAND_MAX_SIZE];
+    private int commandLength = 0;
+    // Commands written by the receiver while a command is executed, executed after that command
+    private final ByteArrayOutputStream deferred = new ByteArrayOutputStream();
+    private boolean executing = false;
+    private long commands = 0;
+
+    // Sensor data, values set using setSensor() and the simulated values
+    private final byte[] sensors = new byte[RoombaJSSC.SENSOR_PACKET_ALL_SIZE];
+    private final byte[] frame = new byte[RoombaJSSC.SENSOR_PACKET_ALL_SIZE];
+    private byte[] response = new byte[RoombaJSSC.SENSOR_PACKET_ALL_SIZE + 3];
+
+    // Simulated state
+    private long time = 0;
+    private int mode = MODE_OFF;
+    private int requestedVelocity = 0;
+    private int requestedRadius = 0;
+    private int requestedRightVelocity = 0;
+    private int requestedLeftVelocity = 0;
+    private double leftVelocity = 0;
+    private double rightVelocity = 0;
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private double distance = 0;
+    private double angle = 0;
+    private double leftCounts = 0;
+    private double rightCounts = 0;
+    private final int[] songDurations = new int[16];
+    private int songNumber = 0;
+    private long songEnd = -1;
+
+    private int[] streamPackets = null;
+    private boolean streamPaused = false;
+    private long nextStream = 0;
+
+    /**
+     * Create a simulator, time only advances when advance() is called.
+     */
+    public RoombaSimulator() {
+        this(0);
+    }
+
+    /**
+     * Create a simulator that advances time on its own while it is opened.
+     * @param timeScale Simulated time per wall clock time (e.g. 1 = real-time, 10 = 10x faster),
+     *                  0 to only advance time when advance() is called.
+     * @throws IllegalArgumentException If the time scale is negative.
+     */
+    public RoombaSimulator(double timeScale) throws IllegalArgumentException {
+        if (timeScale < 0)
+            throw new IllegalArgumentException("Time scale should be positive (or 0)");
+        this.timeScale = timeScale;
+        // Battery: 16V, 150mA discharge, 25 degrees Celsius, 2500/2696mAh
+        setSensor(22, 16000);
+        setSensor(23, -150);
+        setSensor(24, 25);
+        setSensor(25, 2500);
+        setSensor(26, 2696);
+    }
+
+    public String[] portList() {
+        return new String[] { "simulator" };
+    }
+
+    public void open(String portId, RoombaTransport.Receiver receiver) throws ClosedChannelException {
+        lock.lock();
+        try {
+            this.receiver = receiver;
+            open = true;
+            commandLength = 0;
+            if (timeScale > 0 && ticker == null) {
+                lastTick = System.nanoTime();
+                ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "roomba-simulator");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                ticker.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                }, STREAM_INTERVAL, STREAM_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return open;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        ScheduledExecutorService executor;
+        lock.lock();
+        try {
+            open = false;
+            executor = ticker;
+            ticker = null;
+        } finally {
+            lock.unlock();
+        }
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * Receive commands, complete commands are executed immediately. Responses to sensor queries
+     * are passed to the receiver before this method returns.
+     * @param src Command bytes.
+     * @return Number of bytes written.
+     * @throws ClosedChannelException If the simulator is not opened.
+     */
+    public int write(ByteBuffer src) throws ClosedChannelException {
+        lock.lock();
+        try {
+            if (!open)
+                throw new ClosedChannelException();
+            int length = src.remaining();
+            if (executing) {
+                // Written by the receiver of a response
+                while (src.hasRemaining()) {
+                    deferred.write(src.get());
+                }
+                return length;
+            }
+            while (src.hasRemaining()) {
+                receive(src.get());
+            }
+            while (deferred.size() > 0) {
+                final byte[] bytes = deferred.toByteArray();
+                deferred.reset();
+                for (byte b: bytes) {
+                    receive(b);
+                }
+            }
+            return length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a byte to the current command, the command is executed when it is complete.
+     * @param b Command byte.
+     */
+    private void receive(byte b) {
+        command[commandLength++] = b;
+        int size = commandSize();
+        if (size > 0 && commandLength >= size) {
+            executing = true;
+            try {
+                execute();
+            } finally {
+                executing = false;
+            }
+            commandLength = 0;
+        }
+    }
+
+    /**
+     * Advance the simulated time, moves the roomba and sends stream packets.
+     * @param millis Time to advance in milliseconds.
+     * @throws IllegalArgumentException If millis is negative.
+     */
+    public void advance(long millis) throws IllegalArgumentException {
+        lock.lock();
+        try {
+            if (millis < 0)
+                throw new IllegalArgumentException("Time should be positive");
+            final long end = time + millis;
+            while (time < end) {
+                long step = Math.min(end - time, STREAM_INTERVAL);
+                move(step / 1000.0);
+                time += step;
+                if (songEnd >= 0 && time >= songEnd)
+                    songEnd = -1;
+                if (streamPackets != null && !streamPaused && time >= nextStream) {
+                    nextStream += STREAM_INTERVAL;
+                    sendStreamPacket();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Advance the time by the elapsed wall clock time times the time scale.
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        long millis = (long)(TimeUnit.NANOSECONDS.toMillis(now - lastTick) * timeScale);
+        if (millis > 0) {
+            lastTick = now;
+            advance(millis);
+        }
+    }
+
+    /**
+     * Set the value of a (single) sensor packet, e.g. to simulate a bump or a cliff.
+     * Simulated values (distance, angle, OI mode, encoder counts etc.) can not be overridden.
+     * @param packetId Sensor packet ID (7-58).
+     * @param value Value of the sensor packet.
+     * @throws IllegalArgumentException If the packet ID is not a single sensor packet.
+     */
+    public void setSensor(int packetId, int value) throws IllegalArgumentException {
+        lock.lock();
+        try {
+            if (packetId < 7 || packetId > 58)
+                throw new IllegalArgumentException("Packet ID should be between 7 and 58");
+            int offset = RoombaJSSC.SENSOR_PACKET_OFFSET[packetId];
+            if (RoombaJSSC.SENSOR_PACKET_SIZE[packetId] == 2) {
+                sensors[offset] = (byte)(value >>> 8);
+                sensors[offset + 1] = (byte)value;
+            } else {
+                sensors[offset] = (byte)value;
+            }
+            checkSafety();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //region Simulated state
+
+    /**
+     * Get the simulated time.
+     * @return Time in milliseconds since the creation of the simulator.
+     */
+    public long time() {
+        lock.lock();
+        try {
+            return time;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the OI mode.
+     * @return OI mode (MODE_OFF, MODE_PASSIVE, MODE_SAFE or MODE_FULL)
+     */
+    public int mode() {
+        lock.lock();
+        try {
+            return mode;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the x position of the roomba (forward at start).
+     * @return X position in mm.
+     */
+    public double x() {
+        lock.lock();
+        try {
+            return x;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the y position of the roomba (left at start).
+     * @return Y position in mm.
+     */
+    public double y() {
+        lock.lock();
+        try {
+            return y;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the heading of the roomba (counter-clockwise).
+     * @return Heading in radians.
+     */
+    public double heading() {
+        lock.lock();
+        try {
+            return heading;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the velocity of the left wheel.
+     * @return Velocity in mm/s.
+     */
+    public double leftVelocity() {
+        lock.lock();
+        try {
+            return leftVelocity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the velocity of the right wheel.
+     * @return Velocity in mm/s.
+     */
+    public double rightVelocity() {
+        lock.lock();
+        try {
+            return rightVelocity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of executed commands.
+     * @return Number of commands.
+     */
+    public long commands() {
+        lock.lock();
+        try {
+            return commands;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if a song is playing.
+     * @return True if a song is playing.
+     */
+    public boolean songPlaying() {
+        lock.lock();
+        try {
+            return songEnd >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //endregion
+
+    /**
+     * Get the size of the received command.
+     * @return Command size in bytes, or 0 if not known yet.
+     */
+    private int commandSize() {
+        switch (command[0] & 0xff) {
+            case 137: case 145: case 146: case 164:
+                return 5;
+            case 139: case 144: case 168:
+                return 4;
+            case 162:
+                return 3;
+            case 138: case 141: case 142: case 150: case 165:
+                return 2;
+            case 167:
+                return 16;
+            case 140:
+                return commandLength < 3 ? 0 : 3 + (command[2] & 0xff) * 2;
+            case 148: case 149:
+                return commandLength < 2 ? 0 : 2 + (command[1] & 0xff);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Execute the received command.
+     */
+    private void execute() {
+        final int opcode = command[0] & 0xff;
+        commands++;
+        if (mode == MODE_OFF && opcode != 128)
+            return;
+        final boolean control = mode == MODE_SAFE || mode == MODE_FULL;
+        switch (opcode) {
+            case 7:     // Reset
+            case 173:   // Stop
+                halt();
+                streamPackets = null;
+                mode = MODE_OFF;
+                if (opcode == 7) {
+                    // A reset is like reinserting the battery, uploaded songs are lost
+                    Arrays.fill(songDurations, 0);
+                    songEnd = -1;
+                }
+                break;
+            case 128:   // Start
+                if (mode == MODE_OFF)
+                    mode = MODE_PASSIVE;
+                break;
+            case 131:   // Safe
+                mode = MODE_SAFE;
+                checkSafety();
+                break;
+            case 132:   // Full
+                mode = MODE_FULL;
+                break;
+            case 133:   // Power
+            case 134:   // Spot
+            case 135:   // Clean
+            case 136:   // Max clean
+            case 143:   // Seek dock
+                halt();
+                mode = MODE_PASSIVE;
+                break;
+            case 137:   // Drive
+                if (control)
+                    drive(signed16(1), signed16(3));
+                break;
+            case 145:   // Drive direct
+                if (control)
+                    driveDirect(signed16(1), signed16(3));
+                break;
+            case 146:   // Drive PWM
+                if (control)
+                    driveDirect(signed16(1) * 500 / 255, signed16(3) * 500 / 255);
+                break;
+            case 140:   // Song
+                int duration = 0;
+                for (int i = 4; i < commandLength; i += 2) {
+                    duration += command[i] & 0xff;
+                }
+                songDurations[command[1] & 0x0f] = duration;
+                break;
+            case 141:   // Play
+                if (control) {
+                    songNumber = command[1] & 0x0f;
+                    songEnd = time + songDurations[songNumber] * 1000L / 64;
+                }
+                break;
+            case 142:   // Query
+                query(command, 1, 1);
+                break;
+            case 149:   // Query list
+                query(command, 2, command[1] & 0xff);
+                break;
+            case 148:   // Stream
+                streamPackets = new int[command[1] & 0xff];
+                for (int i = 0; i < streamPackets.length; i++) {
+                    streamPackets[i] = command[2 + i] & 0xff;
+                }
+                streamPaused = false;
+                nextStream = time + STREAM_INTERVAL;
+                break;
+            case 150:   // Pause/resume stream
+                streamPaused = command[1] == 0;
+                nextStream = time + STREAM_INTERVAL;
+                break;
+            default:
+                // Motors, LEDs, buttons, schedule and time commands do not change the simulated state
+                break;
+        }
+    }
+
+    private int signed16(int index) {
+        return (short)(((command[index] & 0xff) << 8) | (command[index + 1] & 0xff));
+    }
+
+    private void drive(int velocity, int radius) {
+        requestedVelocity = velocity;
+        requestedRadius = radius;
+        if (radius == -32768 || radius == 32767) {
+            // Straight
+            leftVelocity = velocity;
+            rightVelocity = velocity;
+        } else if (radius == -1) {
+            // Turn in place clockwise
+            leftVelocity = velocity;
+            rightVelocity = -velocity;
+        } else if (radius == 1) {
+            // Turn in place counter-clockwise
+            leftVelocity = -velocity;
+            rightVelocity = velocity;
+        } else {
+            leftVelocity = velocity * (radius - WHEEL_BASE / 2) / radius;
+            rightVelocity = velocity * (radius + WHEEL_BASE / 2) / radius;
+        }
+        requestedLeftVelocity = (int)Math.round(leftVelocity);
+        requestedRightVelocity = (int)Math.round(rightVelocity);
+    }
+
+    private void driveDirect(int right, int left) {
+        requestedRightVelocity = right;
+        requestedLeftVelocity = left;
+        requestedVelocity = (right + left) / 2;
+        requestedRadius = right == left ? 32767 : 0;
+        rightVelocity = right;
+        leftVelocity = left;
+    }
+
+    private void halt() {
+        driveDirect(0, 0);
+        songEnd = -1;
+    }
+
+    /**
+     * Move the roomba using the current wheel velocities.
+     * @param seconds Elapsed time in seconds.
+     */
+    private void move(double seconds) {
+        double left = leftVelocity * seconds;
+        double right = rightVelocity * seconds;
+        double delta = (right - left) / WHEEL_BASE;
+        double forward = (left + right) / 2;
+        x += forward * Math.cos(heading + delta / 2);
+        y += forward * Math.sin(heading + delta / 2);
+        heading += delta;
+        distance += forward;
+        angle += Math.toDegrees(delta);
+        leftCounts += left * COUNTS_PER_MM;
+        rightCounts += right * COUNTS_PER_MM;
+    }
+
+    /**
+     * In safe mode the roomba stops and switches to passive mode on a cliff or wheel drop.
+     */
+    private void checkSafety() {
+        if (mode != MODE_SAFE)
+            return;
+        boolean unsafe = (sensors[RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET] & 0x0c) != 0;
+        for (int offset = RoombaJSSC.SENSOR_CLIFF_LEFT_OFFSET; offset <= RoombaJSSC.SENSOR_CLIFF_RIGHT_OFFSET;
+             offset++) {
+            unsafe |= sensors[offset] != 0;
+        }
+        if (unsafe) {
+            halt();
+            mode = MODE_PASSIVE;
+        }
+    }
+
+    /**
+     * Update the sensor data frame (all sensors packet layout) from the simulated state.
+     */
+    private void updateFrame() {
+        System.arraycopy(sensors, 0, frame, 0, frame.length);
+        putSigned16(RoombaJSSC.SENSOR_DISTANCE_OFFSET, (int)distance);
+        putSigned16(RoombaJSSC.SENSOR_ANGLE_OFFSET, (int)angle);
+        frame[RoombaJSSC.SENSOR_OI_MODE_OFFSET] = (byte)mode;
+        frame[RoombaJSSC.SENSOR_SONG_NUMBER_OFFSET] = (byte)songNumber;
+        frame[RoombaJSSC.SENSOR_SONG_PLAYING_OFFSET] = (byte)(songEnd >= 0 ? 1 : 0);
+        putSigned16(RoombaJSSC.SENSOR_REQUESTED_VELOCITY_OFFSET, requestedVelocity);
+        putSigned16(RoombaJSSC.SENSOR_REQUESTED_RADIUS_OFFSET, requestedRadius);
+        putSigned16(RoombaJSSC.SENSOR_REQUESTED_RIGHT_VELOCITY_OFFSET, requestedRightVelocity);
+        putSigned16(RoombaJSSC.SENSOR_REQUESTED_LEFT_VELOCITY_OFFSET, requestedLeftVelocity);
+        putCounts(RoombaJSSC.SENSOR_LEFT_ENCODER_COUNTS_OFFSET, leftCounts);
+        putCounts(RoombaJSSC.SENSOR_RIGHT_ENCODER_COUNTS_OFFSET, rightCounts);
+        frame[RoombaJSSC.SENSOR_STASIS] |= (leftVelocity + rightVelocity > 0) ? 1 : 0;
+    }
+
+    private void putSigned16(int offset, int value) {
+        value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        frame[offset] = (byte)(value >>> 8);
+        frame[offset + 1] = (byte)value;
+    }
+
+    // Encoder counts wrap around at 65535 (and below 0), like the counts of the roomba
+    private void putCounts(int offset, double counts) {
+        final int value = (int)(long)Math.floor(counts);
+        frame[offset] = (byte)(value >>> 8);
+        frame[offset + 1] = (byte)value;
+    }
+
+    /**
+     * Copy a sensor packet to the response, the distance and angle are reset when they are sent.
+     * @return Offset in the response after the packet.
+     */
+    private int putPacket(int packetId, int offset) {
+        int size = RoombaJSSC.sensorPacketSize(packetId);
+        int frameOffset = RoombaJSSC.SENSOR_PACKET_OFFSET[size > 0 ? packetId : 0];
+        System.arraycopy(frame, frameOffset, response, offset, size);
+        if (size > 0 && frameOffset <= RoombaJSSC.SENSOR_DISTANCE_OFFSET
+                && frameOffset + size > RoombaJSSC.SENSOR_DISTANCE_OFFSET)
+            distance -= (int)distance;
+        if (size > 0 && frameOffset <= RoombaJSSC.SENSOR_ANGLE_OFFSET
+                && frameOffset + size > RoombaJSSC.SENSOR_ANGLE_OFFSET)
+            angle -= (int)angle;
+        return offset + size;
+    }
+
+    private void ensureResponseSize(int size) {
+        if (response.length < size)
+            response = new byte[size];
+    }
+
+    /**
+     * Respond to a (list) query, all requested packets are sent in order.
+     */
+    private void query(byte[] packets, int offset, int count) {
+        updateFrame();
+        ensureResponseSize(count * RoombaJSSC.SENSOR_PACKET_ALL_SIZE);
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length = putPacket(packets[offset + i] & 0xff, length);
+        }
+        deliver(length);
+    }
+
+    /**
+     * Send a stream packet: [19][n-bytes][packet ID][data]...[checksum]
+     */
+    private void sendStreamPacket() {
+        updateFrame();
+        ensureResponseSize(3 + streamPackets.length * (RoombaJSSC.SENSOR_PACKET_ALL_SIZE + 1));
+        int length = 2;
+        for (int packetId: streamPackets) {
+            if (RoombaJSSC.sensorPacketSize(packetId) == 0)
+                continue;
+            response[length++] = (byte)packetId;
+            length = putPacket(packetId, length);
+        }
+        if (length - 2 > 255)
+            return;
+        response[0] = 19;
+        response[1] = (byte)(length - 2);
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += response[i];
+        }
+        response[length++] = (byte)-sum;
+        deliver(length);
+    }
+
+    private void deliver(int length) {
+        if (open && receiver != null && length > 0)
+            receiver.received(ByteBuffer.wrap(response, 0, length));
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Event loop that reads the data of many RoombaSocketTransport connections using a single
+ * NIO Selector on a single thread. Data of every connection is read into one preallocated
+ * buffer and passed to the receiver of that connection.
+ */
+public class RoombaSocketSelector implements Closeable {
+
+    final static Logger log = Logger.getLogger(RoombaSocketSelector.class);
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    // Guards the shared selector, Selector.open() does not run under the class monitor
+    private static final ReentrantLock sharedLock = new ReentrantLock();
+    private static volatile RoombaSocketSelector shared = null;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<RoombaSocketTransport> registrations =
+            new ConcurrentLinkedQueue<RoombaSocketTransport>();
+    private volatile boolean closed = false;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * Create a selector and start its (daemon) event loop thread.
+     * @throws IOException If the selector could not be opened.
+     */
+    public RoombaSocketSelector() throws IOException {
+        this(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "roomba-socket-selector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Create a selector and start its event loop thread using the given thread factory.
+     * @param threadFactory Factory of the event loop thread.
+     * @throws IOException If the selector could not be opened.
+     */
+    public RoombaSocketSelector(ThreadFactory threadFactory) throws IOException {
+        selector = Selector.open();
+        thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Get the selector shared by all socket transports that do not specify a selector,
+     * created on first use.
+     * @return Shared selector.
+     * @throws IOException If the selector could not be opened.
+     */
+    public static RoombaSocketSelector shared() throws IOException {
+        RoombaSocketSelector selector = shared;
+        if (selector != null)
+            return selector;
+        sharedLock.lock();
+        try {
+            if (shared == null)
+                shared = new RoombaSocketSelector();
+            return shared;
+        } finally {
+            sharedLock.unlock();
+        }
+    }
+
+    /**
+     * Register a connected transport, its channel is registered by the event loop thread.
+     * @param transport Transport with a connected non-blocking channel.
+     * @throws IOException If the selector is closed.
+     */
+    void register(RoombaSocketTransport transport) throws IOException {
+        if (closed)
+            throw new IOException("Selector closed");
+        registrations.add(transport);
+        selector.wakeup();
+    }
+
+    /**
+     * Wake up the event loop, e.g. to process cancelled connections.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Stop the event loop and close all connections.
+     * @throws IOException If the selector could not be closed.
+     */
+    public void close() throws IOException {
+        sharedLock.lock();
+        try {
+            if (shared == this)
+                shared = null;
+        } finally {
+            sharedLock.unlock();
+        }
+        closed = true;
+        selector.wakeup();
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Event loop, runs until the selector is closed.
+     */
+    private void loop() {
+        try {
+            while (!closed) {
+                selector.select();
+                registerPending();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    read(key);
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Socket selector failed, error: " + ex.getMessage());
+        }
+        closeAll();
+    }
+
+    private void registerPending() {
+        RoombaSocketTransport transport;
+        while ((transport = registrations.poll()) != null) {
+            SocketChannel channel = transport.channel();
+            if (channel == null)
+                continue;
+            try {
+                channel.register(selector, SelectionKey.OP_READ, transport);
+            } catch (IOException ex) {
+                // Channel closed before it was registered
+                log.debug("Failed to register connection, error: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        RoombaSocketTransport transport = (RoombaSocketTransport)key.attachment();
+        try {
+            if (!key.isReadable())
+                return;
+            int read = ((SocketChannel)key.channel()).read(readBuffer);
+            if (read < 0) {
+                log.error("Connection closed by remote host.");
+                disconnect(key);
+                return;
+            }
+            // Call through Buffer: compiled on JDK 9+ without --release 8, the ByteBuffer
+            // overrides of flip() and clear() do not exist on a Java 8 runtime
+            ((Buffer) readBuffer).flip();
+            if (readBuffer.hasRemaining())
+                transport.received(readBuffer);
+        } catch (CancelledKeyException ex) {
+            // Closed by the transport
+        } catch (IOException ex) {
+            log.error("Failed to read data from socket, error: " + ex.getMessage());
+            disconnect(key);
+        } catch (RuntimeException ex) {
+            // Only drop the connection whose receiver failed, the others share this thread
+            log.error("Failed to handle received data, error: " + ex.getMessage());
+            disconnect(key);
+        } finally {
+            ((Buffer) readBuffer).clear();
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            log.debug("Failed to close socket, error: " + ex.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key: selector.keys()) {
+            disconnect(key);
+        }
+        RoombaSocketTransport transport;
+        while ((transport = registrations.poll()) != null) {
+            try {
+                transport.close();
+            } catch (IOException ex) {
+                log.debug("Failed to close socket, error: " + ex.getMessage());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            log.error("Failed to close selector, error: " + ex.getMessage());
+        }
+    }
+}
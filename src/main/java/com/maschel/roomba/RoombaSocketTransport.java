@@ -0,0 +1,215 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RoombaTransport implementation using a TCP connection, e.g. to a serial-to-network bridge
+ * (ser2net) in raw mode. The port is given as "host:port".
+ *
+ * Incoming data of all socket transports is read by the event loop of a RoombaSocketSelector,
+ * by default a single selector thread is shared by all connections.
+ */
+public class RoombaSocketTransport implements RoombaTransport {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int WRITE_TIMEOUT = 5000;
+
+    private final RoombaSocketSelector selector;
+    private final int connectTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile SocketChannel channel = null;
+    private RoombaSocketSelector registeredSelector = null;
+    private RoombaTransport.Receiver receiver = null;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Selector writeSelector = null;
+
+    /**
+     * Create a socket transport using the shared selector.
+     */
+    public RoombaSocketTransport() {
+        this(null, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Create a socket transport.
+     * @param selector Selector to read incoming data (null to use the shared selector).
+     * @param connectTimeout Connect timeout in milliseconds (0 = no timeout).
+     * @throws IllegalArgumentException If the connect timeout is negative.
+     */
+    public RoombaSocketTransport(RoombaSocketSelector selector, int connectTimeout) throws IllegalArgumentException {
+        if (connectTimeout < 0)
+            throw new IllegalArgumentException("Connect timeout should be positive (or 0)");
+        this.selector = selector;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Network ports can not be listed.
+     * @return Empty list.
+     */
+    public String[] portList() {
+        return new String[] {};
+    }
+
+    public void open(String portId, RoombaTransport.Receiver receiver) throws IOException {
+        lock.lock();
+        try {
+            if (channel != null)
+                throw new IOException("Transport already opened");
+            int separator = portId.lastIndexOf(':');
+            int port;
+            try {
+                port = Integer.parseInt(portId.substring(separator + 1));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Port should be formatted as 'host:port'");
+            }
+            if (separator <= 0)
+                throw new IOException("Port should be formatted as 'host:port'");
+
+            SocketChannel socketChannel = SocketChannel.open();
+            try {
+                socketChannel.socket().connect(
+                        new InetSocketAddress(portId.substring(0, separator), port), connectTimeout);
+                socketChannel.socket().setTcpNoDelay(true);
+                socketChannel.configureBlocking(false);
+                this.receiver = receiver;
+                channel = socketChannel;
+                registeredSelector = selector != null ? selector : RoombaSocketSelector.shared();
+                registeredSelector.register(this);
+            } catch (IOException ex) {
+                channel = null;
+                socketChannel.close();
+                throw ex;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the channel of the connection.
+     * @return Channel, or null if not opened.
+     */
+    SocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Pass received data to the receiver, called by the selector thread.
+     * @param data Received data.
+     */
+    void received(ByteBuffer data) {
+        receiver.received(data);
+    }
+
+    public boolean isOpen() {
+        SocketChannel socketChannel = channel;
+        return socketChannel != null && socketChannel.isOpen();
+    }
+
+    /**
+     * Write bytes to the socket. When the send buffer is full the write waits until the socket
+     * is writable again, until all bytes are written.
+     * @param src Bytes to write (position - limit).
+     * @return Number of bytes written.
+     * @throws IOException If the write failed or the socket did not become writable in time.
+     */
+    public int write(ByteBuffer src) throws IOException {
+        SocketChannel socketChannel = channel;
+        if (socketChannel == null)
+            throw new ClosedChannelException();
+        // Held for the whole write, the pieces of a partial write are not interleaved
+        writeLock.lock();
+        try {
+            int written = socketChannel.write(src);
+            if (!src.hasRemaining())
+                return written;
+
+            Selector selector = writeSelector;
+            if (selector == null)
+                writeSelector = selector = Selector.open();
+            // The channel stays registered, register() returns the existing key on later calls
+            socketChannel.register(selector, SelectionKey.OP_WRITE);
+            long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+            while (src.hasRemaining()) {
+                if (channel != socketChannel)
+                    throw new ClosedChannelException();
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new IOException("Write timed out, socket not writable");
+                selector.select(remaining);
+                selector.selectedKeys().clear();
+                written += socketChannel.write(src);
+            }
+            return written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            SocketChannel socketChannel = channel;
+            channel = null;
+            if (socketChannel != null) {
+                socketChannel.close();
+                // Let the selector deregister the channel, this completes the close
+                registeredSelector.wakeup();
+            }
+        } finally {
+            lock.unlock();
+        }
+        Selector selector = writeSelector;
+        if (selector != null) {
+            // Wake a blocked write, it fails on the closed channel
+            selector.wakeup();
+            writeLock.lock();
+            try {
+                writeSelector = null;
+                selector.close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the connection to a roomba alive.
+ *
+ * The supervisor checks the connection every 50ms. A connection is considered lost when a
+ * command could not be written, or when the roomba does not answer a sensor data request
+ * (or stops streaming) within the sensor timeout. A lost connection is closed and opened again,
+ * the delay between attempts doubles from the initial to the maximum reconnect delay.
+ * After reconnecting the last OI mode, the LEDs, all uploaded songs and an active sensor data
+ * stream are restored, so the roomba can be used again without recovery code in the application.
+ * <p>Note: Silence is only detected while sensor data is expected, poll or stream sensor data to
+ * detect a lost connection without sending commands.</p>
+ */
+public class RoombaSupervisor implements Closeable {
+
+    final static Logger log = Logger.getLogger(RoombaSupervisor.class);
+
+    private static final int CHECK_INTERVAL = 50;
+
+    private final RoombaJSSC roomba;
+    private final String portId;
+    private final ScheduledExecutorService executor;
+    private final boolean ownExecutor;
+
+    // Guards the connection state
+    private final ReentrantLock lock = new ReentrantLock();
+    private ScheduledFuture<?> checkTask = null;
+    private volatile boolean linkUp = false;
+    private volatile long reconnects = 0;
+    private long sendFailures = 0;
+    private long reconnectDelay = 0;
+    private long nextAttempt = 0;
+
+    private RoombaPortRegistry portRegistry = null;
+    private final RoombaPortRegistry.Listener portListener = new RoombaPortRegistry.Listener() {
+        public void portAdded(String portId) {
+            if (portId.equals(RoombaSupervisor.this.portId))
+                attachNow();
+        }
+
+        public void portRemoved(String portId) {
+            if (portId.equals(RoombaSupervisor.this.portId))
+                detachNow();
+        }
+    };
+
+    private volatile long sensorTimeout = TimeUnit.MILLISECONDS.toNanos(250);
+    private volatile long initialReconnectDelay = TimeUnit.MILLISECONDS.toNanos(50);
+    private volatile long maxReconnectDelay = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    /**
+     * Create a supervisor that checks the connection on its own thread.
+     * @param roomba Roomba to supervise.
+     * @param portId Name of the port of the roomba.
+     * @throws IllegalArgumentException If the roomba or the port is null.
+     */
+    public RoombaSupervisor(RoombaJSSC roomba, String portId) throws IllegalArgumentException {
+        this(roomba, portId, null);
+    }
+
+    /**
+     * Create a supervisor that checks the connection using the given executor, e.g. to share a
+     * thread pool between the supervisors of many roombas.
+     * @param roomba Roomba to supervise.
+     * @param portId Name of the port of the roomba.
+     * @param executor Executor of the connection checks, or null to use a thread of the supervisor.
+     * @throws IllegalArgumentException If the roomba or the port is null.
+     */
+    public RoombaSupervisor(RoombaJSSC roomba, String portId, ScheduledExecutorService executor)
+            throws IllegalArgumentException {
+        if (roomba == null)
+            throw new IllegalArgumentException("Roomba should not be null");
+        if (portId == null)
+            throw new IllegalArgumentException("Port should not be null");
+        this.roomba = roomba;
+        this.portId = portId;
+        this.ownExecutor = executor == null;
+        this.executor = executor != null ? executor : Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "roomba-supervisor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Connect to the roomba and start supervising the connection. When the connection fails
+     * the supervisor keeps trying to connect.
+     * @return True if connected, False if the first attempt failed.
+     * @throws IllegalStateException If the supervisor is closed.
+     */
+    public boolean connect() throws IllegalStateException {
+        lock.lock();
+        try {
+            if (executor.isShutdown())
+                throw new IllegalStateException("Supervisor is closed");
+            if (checkTask != null)
+                return linkUp;
+            log.info("Supervising connection to port: '" + portId + "'.");
+            reconnectDelay = initialReconnectDelay;
+            nextAttempt = System.nanoTime();
+            attemptConnect();
+            checkTask = executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    check();
+                }
+            }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            return linkUp;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the time in which expected sensor data should be received, after which the connection
+     * is considered lost.
+     * @param millis Sensor timeout in milliseconds (min. 50ms)
+     * @throws IllegalArgumentException If the timeout is smaller than 50ms.
+     */
+    public void setSensorTimeout(int millis) throws IllegalArgumentException {
+        if (millis < 50)
+            throw new IllegalArgumentException("Sensor timeout should be at least 50ms");
+        sensorTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Set the delay between reconnect attempts, which doubles after every failed attempt.
+     * @param initialMillis Delay before the first attempt in milliseconds (min. 0ms)
+     * @param maxMillis Maximum delay between attempts in milliseconds (min. initialMillis)
+     * @throws IllegalArgumentException If a delay is negative or the maximum is smaller than the initial delay.
+     */
+    public void setReconnectDelay(int initialMillis, int maxMillis) throws IllegalArgumentException {
+        if (initialMillis < 0 || maxMillis < initialMillis)
+            throw new IllegalArgumentException("Reconnect delays should be positive, and the maximum delay " +
+                    "should be at least the initial delay");
+        initialReconnectDelay = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+        maxReconnectDelay = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    /**
+     * Watch the port of the roomba using the given registry. When the port is removed the connection
+     * is closed immediately, when it is added again the supervisor reconnects without waiting for
+     * the reconnect delay.
+     * @param portRegistry Port registry (e.g. RoombaPortRegistry.shared()), or null to stop watching.
+     */
+    public void setPortRegistry(RoombaPortRegistry portRegistry) {
+        lock.lock();
+        try {
+            if (this.portRegistry != null)
+                this.portRegistry.removeListener(portListener);
+            this.portRegistry = portRegistry;
+            if (portRegistry != null)
+                portRegistry.addListener(portListener);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if the roomba is connected.
+     * @return True if connected, False while reconnecting.
+     */
+    public boolean isConnected() {
+        return linkUp;
+    }
+
+    /**
+     * Get the number of times the connection was restored after it was lost.
+     * @return Number of reconnects.
+     */
+    public long reconnects() {
+        return reconnects;
+    }
+
+    /**
+     * Check the connection, close a lost connection and (re)connect when an attempt is due.
+     */
+    private void check() {
+        lock.lock();
+        try {
+            if (checkTask == null)
+                return;
+            if (linkUp) {
+                if (roomba.sendFailures() != sendFailures) {
+                    connectionLost("writing to the roomba failed");
+                } else if (roomba.isSensorDataOverdue(sensorTimeout)) {
+                    connectionLost("no sensor data received");
+                }
+            }
+            if (!linkUp && System.nanoTime() - nextAttempt >= 0) {
+                if (attemptConnect()) {
+                    reconnects++;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Failed to check connection to port: '" + portId + "', error: " + ex.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reconnect without waiting for the reconnect delay, the port of the roomba is added.
+     */
+    private void attachNow() {
+        lock.lock();
+        try {
+            if (checkTask == null || linkUp)
+                return;
+            log.info("Port: '" + portId + "' added, reconnecting.");
+            nextAttempt = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                check();
+            }
+        });
+    }
+
+    /**
+     * Close the connection, the port of the roomba is removed.
+     */
+    private void detachNow() {
+        lock.lock();
+        try {
+            if (checkTask != null && linkUp)
+                connectionLost("port removed");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close a lost connection, the first reconnect attempt is made after the initial reconnect delay.
+     * @param reason Reason to log.
+     */
+    private void connectionLost(String reason) {
+        log.warn("Connection to port: '" + portId + "' lost (" + reason + "), reconnecting.");
+        linkUp = false;
+        roomba.disconnect();
+        reconnectDelay = initialReconnectDelay;
+        nextAttempt = System.nanoTime() + reconnectDelay;
+    }
+
+    /**
+     * Connect to the roomba and restore its state. On failure the next attempt is scheduled
+     * after the (doubled) reconnect delay.
+     * @return True if connected.
+     */
+    private boolean attemptConnect() {
+        if (roomba.reconnect(portId) && roomba.replayState()) {
+            sendFailures = roomba.sendFailures();
+            linkUp = true;
+            log.info("Connected to port: '" + portId + "'.");
+            return true;
+        }
+        roomba.disconnect();
+        // At least 1ms, so an initial delay of 0 still backs off
+        reconnectDelay = Math.min(Math.max(reconnectDelay * 2, TimeUnit.MILLISECONDS.toNanos(1)), maxReconnectDelay);
+        nextAttempt = System.nanoTime() + reconnectDelay;
+        return false;
+    }
+
+    /**
+     * Stop supervising and disconnect from the roomba.
+     */
+    public void close() {
+        setPortRegistry(null);
+        lock.lock();
+        try {
+            if (checkTask != null) {
+                checkTask.cancel(false);
+                checkTask = null;
+            }
+            linkUp = false;
+            roomba.disconnect();
+        } finally {
+            lock.unlock();
+        }
+        if (ownExecutor)
+            executor.shutdown();
+    }
+}
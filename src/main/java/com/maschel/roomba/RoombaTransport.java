@@ -0,0 +1,79 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Transport used by RoombaJSSCTransport to communicate with the roomba.
+ *
+ * A transport is a (blocking) WritableByteChannel for outgoing commands, incoming data is
+ * pushed to the Receiver passed to open(). All protocol logic (framing, sensor decoding,
+ * command writing) stays in RoombaJSSC, a transport only moves bytes.
+ */
+public interface RoombaTransport extends WritableByteChannel {
+
+    /**
+     * Receiver of incoming data.
+     */
+    interface Receiver {
+        /**
+         * Called by the transport when data is received. All calls should be made by a single
+         * thread at a time, the data is consumed before this method returns.
+         * @param data Received data (position - limit).
+         */
+        void received(ByteBuffer data);
+    }
+
+    /**
+     * Get the list of available ports.
+     * @return String[] of ports (empty list if none).
+     */
+    String[] portList();
+
+    /**
+     * Open the transport.
+     * @param portId Name of the port.
+     * @param receiver Receiver of incoming data.
+     * @throws IOException If the port could not be opened.
+     */
+    void open(String portId, Receiver receiver) throws IOException;
+
+    /**
+     * Write bytes to the roomba, blocks until all remaining bytes are written.
+     * @param src Bytes to write (position - limit).
+     * @return Number of bytes written.
+     * @throws IOException If the write failed.
+     */
+    int write(ByteBuffer src) throws IOException;
+}
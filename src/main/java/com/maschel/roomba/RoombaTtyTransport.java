@@ -0,0 +1,241 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * RoombaTransport implementation for Linux tty device nodes (e.g. /dev/ttyUSB0).
+ *
+ * The tty is configured once on open (raw, 8N1, no flow control) using stty, after which it is
+ * accessed as a FileChannel. A dedicated reader thread does blocking reads into a preallocated buffer
+ * and passes the data straight to the receiver, so data is processed as soon as it arrives.
+ */
+public class RoombaTtyTransport implements RoombaTransport {
+
+    final static Logger log = Logger.getLogger(RoombaTtyTransport.class);
+
+    // Serial device names, as used by jssc on Linux
+    static final Pattern TTY_NAMES = Pattern.compile("(ttyS|ttyUSB|ttyACM|ttyAMA|rfcomm|ttyO)[0-9]{1,3}");
+
+    private static final int READ_BUFFER_SIZE = 512;
+
+    private final int baudRate;
+    private final ThreadFactory threadFactory;
+
+    // Separate channels, a FileChannel blocks writes while a read is blocked
+    private volatile FileChannel readChannel = null;
+    private volatile FileChannel writeChannel = null;
+    private Thread readerThread = null;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Create a tty transport using 115200 baud.
+     */
+    public RoombaTtyTransport() {
+        this(RoombaJSSCSerial.BAUDRATE_115200);
+    }
+
+    /**
+     * Create a tty transport.
+     * @param baudRate Baud rate (e.g. 115200 or 19200).
+     * @throws IllegalArgumentException If the baud rate is not positive.
+     */
+    public RoombaTtyTransport(int baudRate) throws IllegalArgumentException {
+        this(baudRate, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "roomba-tty-reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Create a tty transport that creates its reader thread using the given thread factory
+     * (e.g. to use a virtual thread).
+     * @param baudRate Baud rate (e.g. 115200 or 19200).
+     * @param threadFactory Factory of the reader thread.
+     * @throws IllegalArgumentException If the baud rate is not positive or the thread factory is null.
+     */
+    public RoombaTtyTransport(int baudRate, ThreadFactory threadFactory) throws IllegalArgumentException {
+        if (baudRate <= 0)
+            throw new IllegalArgumentException("Baud rate should be positive");
+        if (threadFactory == null)
+            throw new IllegalArgumentException("Thread factory should not be null");
+        this.baudRate = baudRate;
+        this.threadFactory = threadFactory;
+    }
+
+    public String[] portList() {
+        List<String> portNames = new ArrayList<String>();
+        String[] devices = new File("/dev").list();
+        if (devices != null) {
+            Arrays.sort(devices);
+            for (String device: devices) {
+                if (TTY_NAMES.matcher(device).matches())
+                    portNames.add("/dev/" + device);
+            }
+        }
+        return portNames.toArray(new String[portNames.size()]);
+    }
+
+    public void open(String portId, final RoombaTransport.Receiver receiver) throws IOException {
+        lock.lock();
+        try {
+            if (readChannel != null)
+                throw new IOException("Transport already opened");
+            configure(portId);
+            // Opened for reading and writing, so opening does not wait for a writer (e.g. on a pipe)
+            final FileChannel fileChannel = FileChannel.open(Paths.get(portId),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                writeChannel = FileChannel.open(Paths.get(portId), StandardOpenOption.WRITE);
+            } catch (IOException ex) {
+                fileChannel.close();
+                throw ex;
+            }
+            readChannel = fileChannel;
+            readerThread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    read(fileChannel, receiver);
+                }
+            });
+            readerThread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Configure the tty: raw mode, 8N1, no flow control, reads block until at least one byte is available.
+     * @param portId Name of the tty.
+     * @throws IOException If the tty could not be configured.
+     */
+    void configure(String portId) throws IOException {
+        Process stty = new ProcessBuilder("stty", "-F", portId, Integer.toString(baudRate), "raw", "-echo",
+                "cs8", "-cstopb", "-parenb", "-crtscts", "-ixon", "-ixoff", "clocal", "min", "1", "time", "0")
+                .redirectErrorStream(true)
+                .start();
+        try {
+            if (stty.waitFor() != 0)
+                throw new IOException("Failed to configure tty: '" + portId + "' (stty exit code "
+                        + stty.exitValue() + ")");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while configuring tty: '" + portId + "'");
+        }
+    }
+
+    /**
+     * Read loop of the reader thread, runs until the channel is closed.
+     */
+    private void read(FileChannel fileChannel, RoombaTransport.Receiver receiver) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try {
+            while (fileChannel.read(buffer) >= 0) {
+                // Call through Buffer: compiled on JDK 9+ without --release 8, the ByteBuffer
+                // overrides of flip() and clear() do not exist on a Java 8 runtime
+                ((Buffer) buffer).flip();
+                if (buffer.hasRemaining())
+                    receiver.received(buffer);
+                ((Buffer) buffer).clear();
+            }
+            log.error("End of stream reading from tty.");
+        } catch (ClosedChannelException ex) {
+            // Closed by close()
+        } catch (IOException ex) {
+            log.error("Failed to read data from tty, error: " + ex.getMessage());
+        }
+    }
+
+    public boolean isOpen() {
+        FileChannel fileChannel = writeChannel;
+        return fileChannel != null && fileChannel.isOpen();
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+        FileChannel fileChannel = writeChannel;
+        if (fileChannel == null)
+            throw new ClosedChannelException();
+        int written = 0;
+        while (src.hasRemaining()) {
+            written += fileChannel.write(src);
+        }
+        return written;
+    }
+
+    public void close() throws IOException {
+        FileChannel fileChannel;
+        FileChannel outputChannel;
+        Thread thread;
+        lock.lock();
+        try {
+            fileChannel = readChannel;
+            outputChannel = writeChannel;
+            thread = readerThread;
+            readChannel = null;
+            writeChannel = null;
+            readerThread = null;
+        } finally {
+            lock.unlock();
+        }
+        if (fileChannel == null)
+            return;
+        outputChannel.close();
+        // Closing the channel wakes up the reader thread
+        fileChannel.close();
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import jssc.SerialPortException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for RoombaCommandWriter.
+ */
+public class RoombaCommandWriterTest extends RoombaJSSCTestSuite
+{
+    /**
+     * Ensure that we are connected and batched writes are enabled before each test.
+     */
+    @Before
+    public void connect() {
+        roombaSerial.connect(SERIAL_PORT);
+        roombaSerial.setBatchedWrites(true);
+    }
+
+    /**
+     * Ensure that the writer thread is stopped after each test.
+     */
+    @After
+    public void disableBatchedWrites() {
+        roombaSerial.setBatchedWrites(false);
+    }
+
+    /**
+     * Test if setBatchedWrites enables and disables the command writer.
+     */
+    @Test
+    public void testSetBatchedWrites() {
+        assertTrue(roombaSerial.isBatchedWrites());
+        roombaSerial.setBatchedWrites(false);
+        assertFalse(roombaSerial.isBatchedWrites());
+    }
+
+    /**
+     * Test if all queued commands are written in order and no single byte writes are used.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testBatchedWritesOrder() throws SerialPortException {
+        final int OPC_START = 128; final int OPC_SAFE = 131; final int OPC_DRIVE = 137; final int OPC_STOP = 173;
+        roombaSerial.start();
+        roombaSerial.safeMode();
+        roombaSerial.drive(-200, 500);
+        roombaSerial.stop();
+        roombaSerial.setBatchedWrites(false);
+
+        byte[] expect = { (byte)OPC_START, (byte)OPC_SAFE, (byte)OPC_DRIVE, (byte)0xff, (byte)0x38, (byte)0x01,
+                (byte)0xf4, (byte)OPC_STOP };
+        assertArrayEquals(expect, writtenBytes());
+        Mockito.verify(serialPort, Mockito.never()).writeInt(Mockito.anyInt());
+    }
+
+    /**
+     * Test if setCommandCoalescing enables batched writes.
+     */
+    @Test
+    public void testSetCommandCoalescing() {
+        roombaSerial.setBatchedWrites(false);
+        roombaSerial.setCommandCoalescing(true);
+        assertTrue(roombaSerial.isCommandCoalescing());
+        assertTrue(roombaSerial.isBatchedWrites());
+    }
+
+    /**
+     * Test if a queued command of a coalescing slot is replaced by the latest command of the slot,
+     * at the position of the first queued command.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testCoalescingSlots() throws SerialPortException {
+        final int OPC_START = 128; final int OPC_DRIVE = 137; final int OPC_LEDS = 139;
+        RoombaCommandWriter writer = new RoombaCommandWriter(roombaSerial);
+        writer.enqueue(new byte[] { (byte)OPC_DRIVE, 0, 100, 0, 0 }, RoombaCommandWriter.SLOT_DRIVE);
+        writer.enqueue(new byte[] { (byte)OPC_START });
+        writer.enqueue(new byte[] { (byte)OPC_LEDS, 0, 0, 0 }, RoombaCommandWriter.SLOT_LEDS);
+        writer.enqueue(new byte[] { (byte)OPC_DRIVE, 0, 50, 0, 0 }, RoombaCommandWriter.SLOT_DRIVE);
+        writer.enqueue(new byte[] { (byte)OPC_LEDS, 1, 0, 0 }, RoombaCommandWriter.SLOT_LEDS);
+        writer.flush();
+
+        byte[] expect = { (byte)OPC_DRIVE, 0, 50, 0, 0, (byte)OPC_START, (byte)OPC_LEDS, 1, 0, 0 };
+        assertArrayEquals(expect, writtenBytes());
+        assertEquals(writer.pending(), 0);
+    }
+
+    /**
+     * Test if the drive commands are coalesced when command coalescing is enabled, the last
+     * drive command should always be written.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testDriveCommandCoalescing() throws SerialPortException {
+        final int OPC_DRIVE_WHEELS = 145;
+        roombaSerial.setCommandCoalescing(true);
+        for (int i = 0; i <= 100; i++) {
+            roombaSerial.driveDirect(i, i);
+        }
+        roombaSerial.setBatchedWrites(false);
+
+        byte[] written = writtenBytes();
+        byte[] expect = { (byte)OPC_DRIVE_WHEELS, 0, 100, 0, 100 };
+        assertTrue(written.length <= 101 * expect.length);
+        assertArrayEquals(expect, Arrays.copyOfRange(written, written.length - expect.length, written.length));
+    }
+
+    /**
+     * Test if an urgent command is written ahead of all queued commands, and if it drops the queued
+     * drive command.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testUrgentCommand() throws SerialPortException {
+        final int OPC_START = 128; final int OPC_DRIVE = 137; final int OPC_DRIVE_WHEELS = 145;
+        RoombaCommandWriter writer = new RoombaCommandWriter(roombaSerial);
+        writer.enqueue(new byte[] { (byte)OPC_START });
+        writer.enqueue(new byte[] { (byte)OPC_DRIVE, 0, 100, 0, 0 }, RoombaCommandWriter.SLOT_DRIVE);
+        writer.enqueueUrgent(new byte[] { (byte)OPC_DRIVE_WHEELS, 0, 0, 0, 0 });
+        writer.flush();
+
+        byte[] expect = { (byte)OPC_DRIVE_WHEELS, 0, 0, 0, 0, (byte)OPC_START };
+        assertArrayEquals(expect, writtenBytes());
+        assertEquals(writer.pending(), 0);
+    }
+
+    /**
+     * Test if batched writes using an executor submit a single drain task for all queued commands,
+     * and write the queued commands in one write.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testBatchedWritesExecutor() throws SerialPortException {
+        final int OPC_START = 128; final int OPC_SAFE = 131;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+        roombaSerial.setBatchedWrites(executor);
+        assertTrue(roombaSerial.isBatchedWrites());
+        roombaSerial.start();
+        roombaSerial.safeMode();
+        assertEquals("Only one drain task should be pending", tasks.size(), 1);
+
+        tasks.remove(0).run();
+        assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_SAFE }, writtenBytes());
+        Mockito.verify(serialPort, Mockito.times(1)).writeBytes(Mockito.any(byte[].class));
+
+        roombaSerial.start();
+        assertEquals("A new drain task should be submitted after the queue is drained", tasks.size(), 1);
+        tasks.remove(0).run();
+    }
+
+    /**
+     * Test if disabling batched writes using an executor writes the queued commands before it returns,
+     * even if the drain task did not run yet.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testStopExecutor() throws SerialPortException {
+        final int OPC_START = 128; final int OPC_SAFE = 131;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roombaSerial.setBatchedWrites(taskCollector(tasks));
+        roombaSerial.start();
+        roombaSerial.safeMode();
+        roombaSerial.setBatchedWrites(false);
+        assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_SAFE }, writtenBytes());
+
+        // The pending drain task finds an empty queue
+        tasks.remove(0).run();
+        Mockito.verify(serialPort, Mockito.times(1)).writeBytes(Mockito.any(byte[].class));
+    }
+
+    /**
+     * Test if a failed drain task completes its futures, and if new drain tasks are submitted after it.
+     * @throws Exception
+     */
+    @Test
+    public void testDrainAfterFailure() throws Exception {
+        final int OPC_START = 128; final int OPC_SAFE = 131;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roombaSerial.setBatchedWrites(taskCollector(tasks));
+        Mockito.when(serialPort.writeBytes(Mockito.any(byte[].class)))
+                .thenThrow(new IllegalStateException("Write failure")).thenReturn(true);
+        CompletableFuture<Boolean> started = roombaSerial.sendAsync(OPC_START);
+        tasks.remove(0).run();
+        assertFalse("The future should complete with False when the write failed", started.get());
+
+        roombaSerial.safeMode();
+        assertEquals("A new drain task should be submitted after a failed drain task", tasks.size(), 1);
+        tasks.remove(0).run();
+        Mockito.verify(serialPort, Mockito.times(2)).writeBytes(Mockito.any(byte[].class));
+    }
+
+    /**
+     * Test if the future of an asynchronous command completes when the command is written.
+     * @throws Exception
+     */
+    @Test
+    public void testSendAsync() throws Exception {
+        final int OPC_START = 128; final int OPC_SAFE = 131;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roombaSerial.setBatchedWrites(taskCollector(tasks));
+        CompletableFuture<Boolean> started = roombaSerial.sendAsync(OPC_START);
+        CompletableFuture<Boolean> safe = roombaSerial.sendAsync(new byte[] { (byte)OPC_SAFE });
+        assertFalse(started.isDone());
+        assertEquals(roombaSerial.outboundQueueDepth(), 2);
+
+        tasks.remove(0).run();
+        assertTrue(started.get());
+        assertTrue(safe.get());
+        assertEquals(roombaSerial.outboundQueueDepth(), 0);
+        assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_SAFE }, writtenBytes());
+    }
+
+    /**
+     * Test if the DROP_OLDEST overflow policy drops the oldest queued command when the queue is full.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testOverflowDropOldest() throws SerialPortException {
+        final int OPC_SAFE = 131; final int OPC_FULL = 132;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roombaSerial.setOutboundQueue(2, RoombaOverflowPolicy.DROP_OLDEST);
+        roombaSerial.setBatchedWrites(taskCollector(tasks));
+        roombaSerial.start();
+        roombaSerial.safeMode();
+        roombaSerial.fullMode();
+        assertEquals(roombaSerial.outboundQueueDepth(), 2);
+        assertEquals(roombaSerial.droppedCommands(), 1);
+
+        tasks.remove(0).run();
+        assertArrayEquals(new byte[] { (byte)OPC_SAFE, (byte)OPC_FULL }, writtenBytes());
+    }
+
+    /**
+     * Test if the DROP_NON_SAFETY overflow policy drops new commands when the queue is full, except
+     * for safety commands.
+     * @throws Exception
+     */
+    @Test
+    public void testOverflowDropNonSafety() throws Exception {
+        final int OPC_START = 128; final int OPC_CLEAN = 135; final int OPC_STOP = 173;
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roombaSerial.setOutboundQueue(1, RoombaOverflowPolicy.DROP_NON_SAFETY);
+        roombaSerial.setBatchedWrites(taskCollector(tasks));
+        roombaSerial.start();
+        CompletableFuture<Boolean> clean = roombaSerial.sendAsync(OPC_CLEAN);
+        assertTrue(clean.isDone());
+        assertFalse(clean.get());
+        roombaSerial.stop();
+        assertEquals(roombaSerial.outboundQueueDepth(), 2);
+        assertEquals(roombaSerial.droppedCommands(), 1);
+
+        tasks.remove(0).run();
+        assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_STOP }, writtenBytes());
+    }
+
+    /**
+     * Test if the BLOCK overflow policy blocks the sender until the queue is drained.
+     * @throws Exception
+     */
+    @Test
+    public void testOverflowBlock() throws Exception {
+        final int OPC_START = 128; final int OPC_SAFE = 131;
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(serialPort.writeBytes(Mockito.any(byte[].class))).thenAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                writing.countDown();
+                release.await();
+                return true;
+            }
+        });
+        roombaSerial.setOutboundQueue(1, RoombaOverflowPolicy.BLOCK);
+        roombaSerial.setBatchedWrites(true);
+        // The writer thread blocks while writing the first command, the second fills the queue
+        roombaSerial.start();
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+        roombaSerial.safeMode();
+        Thread sender = new Thread(new Runnable() {
+            public void run() {
+                roombaSerial.safeMode();
+            }
+        });
+        sender.start();
+        sender.join(100);
+        assertTrue("The sender should block while the queue is full", sender.isAlive());
+
+        release.countDown();
+        sender.join(1000);
+        assertFalse(sender.isAlive());
+        roombaSerial.setBatchedWrites(false);
+        assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_SAFE, (byte)OPC_SAFE }, writtenBytes());
+    }
+
+    /**
+     * Test if the BLOCK overflow policy does not deadlock when the sender runs on the executor of the
+     * drain tasks, the sender writes the queued commands itself.
+     * @throws Exception
+     */
+    @Test
+    public void testOverflowBlockExecutor() throws Exception {
+        final int OPC_START = 128; final int OPC_SAFE = 131; final int OPC_FULL = 132;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            roombaSerial.setOutboundQueue(1, RoombaOverflowPolicy.BLOCK);
+            roombaSerial.setBatchedWrites(executor);
+            Future<?> sent = executor.submit(new Runnable() {
+                public void run() {
+                    roombaSerial.start();
+                    roombaSerial.safeMode();
+                    roombaSerial.fullMode();
+                }
+            });
+            sent.get(1, TimeUnit.SECONDS);
+            roombaSerial.setBatchedWrites(false);
+            assertArrayEquals(new byte[] { (byte)OPC_START, (byte)OPC_SAFE, (byte)OPC_FULL }, writtenBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test if setOutboundQueue validates its arguments.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetOutboundQueueCapacity() {
+        roombaSerial.setOutboundQueue(0, RoombaOverflowPolicy.BLOCK);
+    }
+
+    // Helper method that returns an executor which collects the submitted tasks
+    Executor taskCollector(final List<Runnable> tasks) {
+        return new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        };
+    }
+
+    // Helper method that returns all bytes written to the serial port
+    byte[] writtenBytes() throws SerialPortException {
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        Mockito.verify(serialPort, Mockito.atLeastOnce()).writeBytes(captor.capture());
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        for (byte[] bytes: captor.getAllValues()) {
+            written.write(bytes, 0, bytes.length);
+        }
+        return written.toByteArray();
+    }
+}
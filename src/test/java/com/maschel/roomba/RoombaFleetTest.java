@@ -0,0 +1,126 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaFleet, uses simulated roombas.
+ */
+public class RoombaFleetTest
+{
+    private static final int ROOMBAS = 50;
+
+    private RoombaFleet fleet;
+    private List<RoombaSimulator> simulators;
+
+    @Before
+    public void setUp() {
+        fleet = new RoombaFleet(2);
+        simulators = new ArrayList<RoombaSimulator>();
+        for (int i=0; i < ROOMBAS; i++) {
+            RoombaSimulator simulator = new RoombaSimulator();
+            assertNotNull(fleet.connect(simulator, "simulator"));
+            simulators.add(simulator);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        fleet.close();
+    }
+
+    /**
+     * Test if the commands of all roombas are written using the pool of the fleet.
+     */
+    @Test
+    public void testCommands() throws InterruptedException {
+        assertEquals(fleet.size(), ROOMBAS);
+        for (RoombaJSSC roomba: fleet.roombas()) {
+            assertTrue(roomba.isBatchedWrites());
+            roomba.startup();
+            roomba.driveDirect(100, 100);
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        for (RoombaSimulator simulator: simulators) {
+            while (simulator.rightVelocity() != 100 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+            assertEquals(simulator.rightVelocity(), 100, 0);
+        }
+    }
+
+    /**
+     * Test if the sensor data of all roombas is polled.
+     */
+    @Test
+    public void testSensorPolling() {
+        for (RoombaJSSC roomba: fleet.roombas()) {
+            roomba.start();
+        }
+        fleet.setSensorPolling(50);
+        for (RoombaJSSC roomba: fleet.roombas()) {
+            assertTrue("Sensor data should be polled", roomba.awaitSensorData(1000));
+            assertEquals(roomba.mode(), RoombaSimulator.MODE_PASSIVE);
+        }
+        fleet.setSensorPolling(0);
+    }
+
+    /**
+     * Test if a removed roomba returns to unbatched writes, and if closing the fleet disconnects
+     * all roombas.
+     */
+    @Test
+    public void testRemoveAndClose() {
+        RoombaJSSC roomba = fleet.roombas().get(0);
+        fleet.remove(roomba);
+        assertEquals(fleet.size(), ROOMBAS - 1);
+        assertFalse(roomba.isBatchedWrites());
+
+        fleet.close();
+        assertEquals(fleet.size(), 0);
+        assertFalse(simulators.get(1).isOpen());
+        try {
+            fleet.add(roomba);
+            fail("add() should throw IllegalStateException after close()");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+}
@@ -34,6 +34,7 @@ import jssc.SerialPort;
 import jssc.SerialPortEvent;
 import jssc.SerialPortException;
 import jssc.SerialPortList;
+import jssc.SerialPortTimeoutException;
 import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
@@ -93,6 +94,100 @@ public class RoombaJSSCSerialTest extends RoombaJSSCTestSuite
         assertFalse("connect() should return False on exception in openPort()", roombaSerial.connect(SERIAL_PORT));
     }
 
+    /**
+     * Test if the serial port is opened using the given baud rate.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testConnectBaudRate() throws SerialPortException {
+        assertTrue(roombaSerial.connect(SERIAL_PORT, RoombaJSSCSerial.BAUDRATE_19200));
+        assertEquals(roombaSerial.baudRate(), RoombaJSSCSerial.BAUDRATE_19200);
+        Mockito.verify(serialPort).setParams(RoombaJSSCSerial.BAUDRATE_19200,
+                SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+    }
+
+    /**
+     * Test if the baud rate detection probes each baud rate and connects using the baud rate
+     * at which valid sensor data is received.
+     * @throws Exception
+     */
+    @Test
+    public void testConnectAutoBaudRate() throws Exception {
+        // Valid sensor data: all zero, except OI mode (passive) and charging state (not charging)
+        byte[] sensorData = new byte[80];
+        sensorData[40] = 1;
+        Mockito.when(serialPort.readBytes(Matchers.eq(80), Matchers.anyInt()))
+                .thenThrow(new SerialPortTimeoutException(SERIAL_PORT, "readBytes", 250))
+                .thenReturn(sensorData);
+
+        assertTrue(roombaSerial.connect(SERIAL_PORT, RoombaJSSCSerial.BAUDRATE_AUTO));
+        assertEquals(roombaSerial.baudRate(), RoombaJSSCSerial.BAUDRATE_19200);
+        Mockito.verify(serialPort, Mockito.times(2)).writeBytes(RoombaJSSC.PROBE_REQUEST);
+    }
+
+    /**
+     * Test if connecting with baud rate detection fails if the roomba does not respond or
+     * responds with invalid sensor data.
+     * @throws Exception
+     */
+    @Test
+    public void testConnectAutoBaudRateNoResponse() throws Exception {
+        byte[] invalidData = new byte[80];
+        invalidData[40] = (byte)0xff;
+        Mockito.when(serialPort.readBytes(Matchers.eq(80), Matchers.anyInt()))
+                .thenThrow(new SerialPortTimeoutException(SERIAL_PORT, "readBytes", 250))
+                .thenReturn(invalidData);
+
+        assertFalse(roombaSerial.connect(SERIAL_PORT, RoombaJSSCSerial.BAUDRATE_AUTO));
+        assertFalse(roombaSerial.connected);
+    }
+
+    /**
+     * Test if discovery probes every port and returns the ports at which valid sensor data is received.
+     * @throws Exception
+     */
+    @Test
+    public void testDiscover() throws Exception {
+        final String[] ports = { "/dev/tty.mock0", "/dev/tty.mock1", "/dev/tty.mock2" };
+        roombaSerial.setPortRegistry(new RoombaPortRegistry(new RoombaPortRegistry.Scanner() {
+            public String[] scan() {
+                return ports;
+            }
+        }, null, null));
+        byte[] sensorData = new byte[80];
+        sensorData[40] = 1;
+        Mockito.when(serialPort.readBytes(Matchers.eq(80), Matchers.anyInt())).thenReturn(sensorData);
+
+        assertArrayEquals(roombaSerial.discover(), ports);
+        Mockito.verify(serialPort, Mockito.times(3)).writeBytes(RoombaJSSC.PROBE_REQUEST);
+    }
+
+    /**
+     * Test if discovery returns no ports if no roomba responds.
+     * @throws Exception
+     */
+    @Test
+    public void testDiscoverNoResponse() throws Exception {
+        Mockito.when(serialPort.readBytes(Matchers.eq(80), Matchers.anyInt()))
+                .thenThrow(new SerialPortTimeoutException(SERIAL_PORT, "readBytes", 250));
+
+        assertEquals(roombaSerial.discover().length, 0);
+        assertTrue(roombaSerial.discover(RoombaJSSCSerial.BAUDRATE_AUTO).isEmpty());
+    }
+
+    /**
+     * Test if setProbeTimeout validates its argument.
+     */
+    @Test
+    public void testSetProbeTimeoutInvalid() {
+        try {
+            roombaSerial.setProbeTimeout(1);
+            fail("setProbeTimeout() should throw IllegalArgumentException on a timeout < 10ms");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+
     /**
      * Test if the disconnect method closes the serialPort and
      * sets the variable to null
@@ -136,8 +231,8 @@ public class RoombaJSSCSerialTest extends RoombaJSSCTestSuite
 
     /**
      * Test if the serialEvent method processes the incoming serial (sensor) data as expected.
-     * The event handler should write all incoming data to the sensorDataBuffer, until a all the
-     * packets are received (80 bytes) then the buffer should be copied to the currentSensorData array.
+     * The event handler should write all incoming data to the receive buffer, until a all the
+     * packets are received (80 bytes) then the packet should be copied to the currentSensorData array.
      * @throws SerialPortException
      */
     @Test
@@ -156,41 +251,59 @@ public class RoombaJSSCSerialTest extends RoombaJSSCTestSuite
             bytes2[i] = (byte)0x7f;
             bytes3[i] = (byte)0xff;
         }
-        // Initialize the buffer
-        roombaSerial.sensorDataBuffer = new byte[80];
         // Create expected buffer
         byte[] expect_buffer = new byte[80];
+        // The chunks belong to one packet however slow the test runs
+        roombaSerial.setPacketGapTimeout(60000);
         // Create a mock RXCHAR serialPortEvent of byte_array_length bytes
         SerialPortEvent serialPortEvent = new SerialPortEvent(SERIAL_PORT, SerialPort.MASK_RXCHAR, byte_array_length);
 
-        // Check if 0-20 bytes are written to the buffer
+        // Check if 0-20 bytes are written to the receive buffer
         System.arraycopy(bytes0, 0, expect_buffer, 0, byte_array_length);
-        Mockito.when(serialPort.readBytes()).thenReturn(bytes0);
+        Mockito.when(serialPort.readBytes(byte_array_length)).thenReturn(bytes0);
         roombaSerial.serialEvent(serialPortEvent);
-        assertArrayEquals(roombaSerial.sensorDataBuffer, expect_buffer);
-        assertEquals(roombaSerial.sensorDataBufferIndex, 20);
+        assertEquals(roombaSerial.receiveBuffer.available(), 20);
 
-        // Check if 20-40 bytes are written to the buffer
+        // Check if 20-40 bytes are written to the receive buffer
         System.arraycopy(bytes1, 0, expect_buffer, byte_array_length, byte_array_length);
-        Mockito.when(serialPort.readBytes()).thenReturn(bytes1);
+        Mockito.when(serialPort.readBytes(byte_array_length)).thenReturn(bytes1);
         roombaSerial.serialEvent(serialPortEvent);
-        assertArrayEquals(roombaSerial.sensorDataBuffer, expect_buffer);
-        assertEquals(roombaSerial.sensorDataBufferIndex, 40);
+        assertEquals(roombaSerial.receiveBuffer.available(), 40);
 
-        // Check if 40-60 bytes are written to the buffer
+        // Check if 40-60 bytes are written to the receive buffer
         System.arraycopy(bytes2, 0, expect_buffer, byte_array_length*2, byte_array_length);
-        Mockito.when(serialPort.readBytes()).thenReturn(bytes2);
+        Mockito.when(serialPort.readBytes(byte_array_length)).thenReturn(bytes2);
         roombaSerial.serialEvent(serialPortEvent);
-        assertArrayEquals(roombaSerial.sensorDataBuffer, expect_buffer);
-        assertEquals(roombaSerial.sensorDataBufferIndex, 60);
+        assertEquals(roombaSerial.receiveBuffer.available(), 60);
 
-        // Check if 60-80 bytes are written to the buffer, the buffer is copied to
-        // the currentSensorData array and the sensorDataBufferIndex is reset to 0.
+        // Check if 60-80 bytes are written to the receive buffer, the packet is copied to
+        // the currentSensorData array and the receive buffer is empty.
         System.arraycopy(bytes3, 0, expect_buffer, byte_array_length*3, byte_array_length);
-        Mockito.when(serialPort.readBytes()).thenReturn(bytes3);
+        Mockito.when(serialPort.readBytes(byte_array_length)).thenReturn(bytes3);
         roombaSerial.serialEvent(serialPortEvent);
-        assertArrayEquals(roombaSerial.sensorDataBuffer, expect_buffer);
         assertArrayEquals(roombaSerial.currentSensorData, expect_buffer);
-        assertEquals(roombaSerial.sensorDataBufferIndex, 0);
+        assertEquals(roombaSerial.receiveBuffer.available(), 0);
+    }
+
+    /**
+     * Test if sensor data packets that wrap around the end of the receive buffer
+     * are read correctly.
+     */
+    @Test
+    public void testReceiveBufferWrapAround() {
+        final int chunk_size = 30;
+        final int packets = (RoombaJSSC.RECEIVE_BUFFER_SIZE / 80) + 2;
+        byte[] stream = new byte[packets * 80];
+        roombaSerial.setPacketGapTimeout(60000);
+        for (int i=0; i < stream.length; i++) {
+            stream[i] = (byte)(i / 80);
+        }
+        for (int i=0; i < stream.length; i += chunk_size) {
+            byte[] chunk = Arrays.copyOfRange(stream, i, Math.min(i + chunk_size, stream.length));
+            roombaSerial.receive(chunk, chunk.length);
+        }
+        byte[] expect = Arrays.copyOfRange(stream, stream.length - 80, stream.length);
+        assertArrayEquals(roombaSerial.currentSensorData, expect);
+        assertEquals(roombaSerial.receiveBuffer.available(), 0);
     }
 }
@@ -40,6 +40,8 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -886,13 +888,222 @@ public class RoombaJSSCTest extends RoombaJSSCTestSuite
     }
 
     /**
-     * Test if the updateSensors method resets sensorDataBufferIndex
+     * Test if updateSensorsAsync shares a pending request, completes with the received sensor data and
+     * schedules a next request after the minimum interval instead of throwing an exception.
+     * @throws Exception
      */
     @Test
-    public void testUpdateSensorsResetsDataBufferIndex() {
-        roombaSerial.sensorDataBufferIndex = 40;
+    public void testUpdateSensorsAsync() throws Exception {
+        final int OPC_QUERY = 142;
+        final int SENSOR_PACKET_ALL = 100;
+        byte[] expect = { (byte)OPC_QUERY, (byte)SENSOR_PACKET_ALL };
+        CompletableFuture<byte[]> update = roombaSerial.updateSensorsAsync();
+        assertTrue(update == roombaSerial.updateSensorsAsync());
+        Mockito.verify(serialPort, Mockito.times(1)).writeBytes(Mockito.eq(expect));
+
+        byte[] packet = new byte[80];
+        Arrays.fill(packet, (byte)0x1);
+        roombaSerial.receive(packet, packet.length);
+        assertTrue(Arrays.equals(update.get(1, TimeUnit.SECONDS), packet));
+
+        // The next request should be scheduled 50ms after the previous request
+        CompletableFuture<byte[]> nextUpdate = roombaSerial.updateSensorsAsync();
+        assertFalse(nextUpdate == update);
+        assertFalse(nextUpdate.isDone());
+        roombaSerial.sleep(100);
+        Mockito.verify(serialPort, Mockito.times(2)).writeBytes(Mockito.eq(expect));
+        roombaSerial.receive(packet, packet.length);
+        assertTrue(nextUpdate.isDone());
+    }
+
+    /**
+     * Test if awaitSensorData returns as soon as the response to a sensor data request is received,
+     * and returns false if no sensor data is received in time.
+     */
+    @Test
+    public void testAwaitSensorData() {
         roombaSerial.updateSensors();
-        assertEquals(roombaSerial.sensorDataBufferIndex, 0);
+        assertFalse(roombaSerial.awaitSensorData(10));
+
+        final byte[] packet = new byte[80];
+        new Thread(new Runnable() {
+            public void run() {
+                roombaSerial.sleep(20);
+                roombaSerial.receive(packet, packet.length);
+            }
+        }).start();
+        assertTrue(roombaSerial.awaitSensorData(1000));
+        // The response is already received
+        assertTrue(roombaSerial.awaitSensorData(0));
+    }
+
+    /**
+     * Test byte[] output of updateSensors with a query list for correct OPC, number of packets and packet ID's
+     * @throws SerialPortException
+     */
+    @Test
+    public void testUpdateSensorsQueryListByteOutput() throws SerialPortException {
+        final int OPC_QUERY_LIST = 149;
+        byte[] expect = { (byte)OPC_QUERY_LIST, 3, 7, 9, 43 };
+        roombaSerial.updateSensors(new int[] { 7, 9, 43 });
+        Mockito.verify(serialPort).writeBytes(Mockito.eq(expect));
+    }
+
+    /**
+     * Test updateSensors with a query list throws exception on unknown packet ID's
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testUpdateSensorsQueryListUnknownPacketId() {
+        roombaSerial.updateSensors(new int[] { 102 });
+    }
+
+    /**
+     * Test if a query list response is decoded into the sensor data, values that were not
+     * requested should keep their value.
+     */
+    @Test
+    public void testUpdateSensorsQueryListDecoding() {
+        // Wall (8) is not requested and should keep its value
+        roombaSerial.sensorDataBuffer[1] = 0x1;
+        roombaSerial.updateSensors(new int[] { 7, 43, 9 });
+        // Bumps (7): left bumper, Left encoder counts (43): 1000, Cliff left (9): cliff
+        byte[] response = { 0x2, (byte)0x03, (byte)0xe8, 0x1 };
+        roombaSerial.receive(response, response.length);
+        assertTrue(roombaSerial.bumpLeft());
+        assertTrue(roombaSerial.wall());
+        assertTrue(roombaSerial.cliffLeft());
+        assertEquals(roombaSerial.encoderCountsLeft(), 1000);
+        assertEquals(roombaSerial.receiveBuffer.available(), 0);
+    }
+
+    /**
+     * Test if the updateSensors method discards partially received sensor data
+     */
+    @Test
+    public void testUpdateSensorsResetsReceiveBuffer() {
+        roombaSerial.receive(new byte[40], 40);
+        roombaSerial.updateSensors();
+        byte[] packet = new byte[80];
+        Arrays.fill(packet, (byte)0x1);
+        roombaSerial.receive(packet, packet.length);
+        assertTrue(Arrays.equals(roombaSerial.currentSensorData, packet));
+        assertEquals(roombaSerial.receiveBuffer.available(), 0);
+    }
+
+    /**
+     * Test if a published sensor data packet is copied, so later writes to the
+     * receiving buffer do not change the values returned by the getters.
+     */
+    @Test
+    public void testPublishSensorDataCopiesPacket() {
+        byte[] packet = new byte[80];
+        packet[0] = 0x1;
+        roombaSerial.publishSensorData(packet);
+        packet[0] = 0x2;
+        assertTrue(roombaSerial.bumpRight());
+        assertFalse(roombaSerial.bumpLeft());
+    }
+
+    /**
+     * Test byte[] output of stream for correct OPC, number of packets and packet ID's
+     * @throws SerialPortException
+     */
+    @Test
+    public void testStreamByteOutput() throws SerialPortException {
+        final int OPC_STREAM = 148;
+        byte[] expect = { (byte)OPC_STREAM, 2, 7, 22 };
+        roombaSerial.stream(new int[] { 7, 22 });
+        Mockito.verify(serialPort).writeBytes(Mockito.eq(expect));
+        assertTrue(roombaSerial.isStreaming());
+    }
+
+    /**
+     * Test stream command throws exception on unknown packet ID's
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testStreamUnknownPacketId() {
+        roombaSerial.stream(new int[] { 7, 59 });
+    }
+
+    /**
+     * Test byte[] output of pauseStream and resumeStream for correct OPC and state
+     * @throws SerialPortException
+     */
+    @Test
+    public void testPauseResumeStreamByteOutput() throws SerialPortException {
+        final int OPC_PAUSE_RESUME_STREAM = 150;
+        roombaSerial.stream();
+        roombaSerial.pauseStream();
+        Mockito.verify(serialPort).writeBytes(Mockito.eq(new byte[] { (byte)OPC_PAUSE_RESUME_STREAM, 0 }));
+        assertFalse(roombaSerial.isStreaming());
+        roombaSerial.resumeStream();
+        Mockito.verify(serialPort).writeBytes(Mockito.eq(new byte[] { (byte)OPC_PAUSE_RESUME_STREAM, 1 }));
+        assertTrue(roombaSerial.isStreaming());
+    }
+
+    /**
+     * Test if updateSensors cannot be used while streaming
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testUpdateSensorsWhileStreaming() {
+        roombaSerial.stream();
+        roombaSerial.updateSensors();
+    }
+
+    /**
+     * Test if stream packets are decoded into the sensor data, leading garbage and packets with
+     * an invalid checksum should be skipped.
+     */
+    @Test
+    public void testStreamPacketDecoding() {
+        roombaSerial.stream(new int[] { 7, 22 });
+        // Bumps and wheel drops (7): both bumpers, Voltage (22): 15000mV
+        byte[] packet = streamPacket(new byte[] { 7, 0x3, 22, (byte)0x3a, (byte)0x98 });
+        byte[] corrupt = packet.clone();
+        corrupt[3] = 0x1;
+        byte[] data = new byte[2 + corrupt.length + packet.length];
+        data[0] = 0x5; data[1] = 0x19;
+        System.arraycopy(corrupt, 0, data, 2, corrupt.length);
+        System.arraycopy(packet, 0, data, 2 + corrupt.length, packet.length);
+        roombaSerial.receive(data, data.length);
+        assertTrue(roombaSerial.bumpLeft());
+        assertTrue(roombaSerial.bumpRight());
+        assertEquals(roombaSerial.batteryVoltage(), 15000);
+        assertEquals(roombaSerial.receiveBuffer.available(), 0);
+        assertEquals(roombaSerial.receivedPackets(), 1);
+        assertEquals(roombaSerial.discardedPackets(), 1);
+        assertEquals(roombaSerial.realignedPackets(), 1);
+    }
+
+    /**
+     * Test if a partially received packet is discarded when the rest of the packet does not
+     * arrive in time, so the next packet is received correctly.
+     */
+    @Test
+    public void testTruncatedPacketRealignment() {
+        roombaSerial.setPacketGapTimeout(1);
+        roombaSerial.receive(new byte[40], 40);
+        roombaSerial.sleep(10);
+        byte[] packet = new byte[80];
+        Arrays.fill(packet, (byte)0x1);
+        roombaSerial.receive(packet, packet.length);
+        assertTrue(Arrays.equals(roombaSerial.currentSensorData, packet));
+        assertEquals(roombaSerial.truncatedPackets(), 1);
+        assertEquals(roombaSerial.receivedPackets(), 1);
+    }
+
+    // Helper method that creates a stream packet (header, n-bytes, packets, checksum)
+    private byte[] streamPacket(byte[] packets) {
+        byte[] packet = new byte[packets.length + 3];
+        packet[0] = 19;
+        packet[1] = (byte)packets.length;
+        System.arraycopy(packets, 0, packet, 2, packets.length);
+        int sum = 0;
+        for (int i = 0; i < packet.length - 1; i++) {
+            sum += packet[i];
+        }
+        packet[packet.length - 1] = (byte)-sum;
+        return packet;
     }
 
     //endregion
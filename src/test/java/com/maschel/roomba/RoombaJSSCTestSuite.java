@@ -35,7 +35,6 @@ import jssc.SerialPortException;
 import jssc.SerialPortList;
 import org.junit.Before;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -44,12 +43,12 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({RoombaJSSCSerial.class, SerialPortList.class})
+@PrepareForTest({RoombaJSSCSerial.class, RoombaSerialTransport.class, SerialPortList.class})
 public abstract class RoombaJSSCTestSuite {
     @Mock
     SerialPort serialPort;
 
-    @InjectMocks
+    // Created with its real constructor, so the (final) fields of RoombaJSSC are initialized
     public RoombaJSSCSerial roombaSerial;
 
     final String SERIAL_PORT = "/dev/tty.mock";
@@ -69,6 +68,7 @@ public abstract class RoombaJSSCTestSuite {
 
     @Before
     public void setUpBefore() throws Exception {
+        roombaSerial = new RoombaJSSCSerial();
         // Mock SerialPortList class
         PowerMockito.mockStatic(SerialPortList.class);
         // By default return a serial port
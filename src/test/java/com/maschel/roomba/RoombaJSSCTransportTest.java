@@ -0,0 +1,178 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaJSSCTransport.
+ */
+public class RoombaJSSCTransportTest
+{
+    /**
+     * Transport that records all written bytes.
+     */
+    static class MockTransport implements RoombaTransport {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        RoombaTransport.Receiver receiver = null;
+        boolean open = false;
+
+        public String[] portList() {
+            return new String[] {"mock"};
+        }
+
+        public void open(String portId, Receiver receiver) throws IOException {
+            if (!portId.equals("mock"))
+                throw new IOException("Port does not exist");
+            this.receiver = receiver;
+            open = true;
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            // Write at most two bytes at a time to test partial writes
+            int length = Math.min(2, src.remaining());
+            for (int i=0; i < length; i++) {
+                written.write(src.get());
+            }
+            return length;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() {
+            open = false;
+        }
+    }
+
+    private MockTransport transport;
+    private RoombaJSSCTransport roomba;
+
+    @Before
+    public void setUp() {
+        transport = new MockTransport();
+        roomba = new RoombaJSSCTransport(transport);
+    }
+
+    /**
+     * Test if connect and disconnect open and close the transport.
+     */
+    @Test
+    public void testConnectDisconnect() {
+        assertFalse("connect() should return False if the transport fails to open", roomba.connect("/dev/i.do.not.exist"));
+        assertFalse(roomba.connected);
+
+        assertTrue("connect() should return True if the transport opened", roomba.connect("mock"));
+        assertTrue(roomba.connected);
+        assertTrue(transport.isOpen());
+
+        roomba.disconnect();
+        assertFalse(roomba.connected);
+        assertFalse(transport.isOpen());
+    }
+
+    /**
+     * Test if commands are completely written to the transport, also on partial writes.
+     */
+    @Test
+    public void testSend() {
+        assertFalse("send() should return False if not connected", roomba.send(128));
+        roomba.connect("mock");
+        roomba.start();
+        roomba.driveDirect(500, -500);
+        assertArrayEquals(transport.written.toByteArray(),
+                new byte[] { (byte)128, (byte)145, (byte)0x01, (byte)0xF4, (byte)0xFE, (byte)0x0C });
+    }
+
+    /**
+     * Test if a batch of queued commands is written from the batch buffer, only up to its length.
+     */
+    @Test
+    public void testSendBatch() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roomba.connect("mock");
+        roomba.setBatchedWrites(new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        roomba.start();
+        roomba.safeMode();
+        tasks.remove(0).run();
+        assertArrayEquals(transport.written.toByteArray(), new byte[] { (byte)128, (byte)131 });
+        roomba.setBatchedWrites(false);
+    }
+
+    /**
+     * Test if data pushed by the transport is decoded as sensor data, also from a direct buffer.
+     */
+    @Test
+    public void testReceive() {
+        roomba.connect("mock");
+        byte[] packet = new byte[80];
+        for (int i=0; i < packet.length; i++) {
+            packet[i] = (byte)i;
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect(packet.length);
+        data.put(packet, 0, 50).flip();
+        transport.receiver.received(data);
+        assertEquals(data.remaining(), 0);
+        assertEquals(roomba.receiveBuffer.available(), 50);
+
+        transport.receiver.received(ByteBuffer.wrap(packet, 50, 30));
+        assertArrayEquals(roomba.currentSensorData, packet);
+        assertEquals(roomba.receiveBuffer.available(), 0);
+    }
+
+    /**
+     * Test if a null transport is rejected.
+     */
+    @Test
+    public void testNullTransport() {
+        try {
+            new RoombaJSSCTransport(null);
+            fail("RoombaJSSCTransport(null) should throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+}
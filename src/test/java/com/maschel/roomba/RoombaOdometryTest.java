@@ -0,0 +1,173 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaOdometry.
+ */
+public class RoombaOdometryTest
+{
+    /**
+     * Test if the difference of encoder counts takes the wraparound into account.
+     */
+    @Test
+    public void testCountsDelta() {
+        assertEquals(RoombaOdometry.countsDelta(100, 150), 50);
+        assertEquals(RoombaOdometry.countsDelta(65530, 5), 11);
+        assertEquals(RoombaOdometry.countsDelta(5, 65530), -11);
+        assertEquals(RoombaOdometry.countsDelta(0, 32767), 32767);
+    }
+
+    /**
+     * Test if the totals keep counting past the wraparound of the encoder counts.
+     */
+    @Test
+    public void testTotals() {
+        RoombaOdometry odometry = new RoombaOdometry();
+        int counts = 60000;
+        odometry.update(0, counts, counts);
+        for (int i = 1; i <= 10; i++) {
+            counts = (counts + 20000) % 65536;
+            odometry.update(i, counts, (65536 - counts) % 65536);
+        }
+        assertEquals(odometry.totalCountsLeft(), 200000);
+        assertEquals(odometry.totalCountsRight(), -200000 - 2 * 60000 + 65536 * 2);
+    }
+
+    /**
+     * Test if the pose is interpolated between the poses of two packets, and not extrapolated.
+     */
+    @Test
+    public void testPoseAt() {
+        RoombaOdometry odometry = new RoombaOdometry(1.0, 200.0, 4);
+        odometry.update(1000, 0, 0);
+        odometry.update(2000, 100, 100);
+        odometry.update(3000, 200, 200);
+
+        assertEquals(odometry.pose().x(), 200, 0.001);
+        assertEquals(odometry.pose().time(), 3000);
+        assertEquals(odometry.poseAt(1500).x(), 50, 0.001);
+        assertEquals(odometry.poseAt(2750).x(), 175, 0.001);
+        assertEquals(odometry.poseAt(500).x(), 0, 0.001);
+        assertEquals(odometry.poseAt(500).time(), 1000);
+        assertEquals(odometry.poseAt(4000).x(), 200, 0.001);
+
+        // The oldest poses are replaced
+        odometry.update(4000, 300, 300);
+        odometry.update(5000, 400, 400);
+        assertEquals(odometry.poseAt(1500).x(), 100, 0.001);
+    }
+
+    /**
+     * Test if turning in place changes the heading only.
+     */
+    @Test
+    public void testTurn() {
+        RoombaOdometry odometry = new RoombaOdometry(1.0, 200.0, 4);
+        odometry.update(0, 0, 0);
+        odometry.update(1, 65536 - (int)(50 * Math.PI), (int)(50 * Math.PI));
+        RoombaPose pose = odometry.pose();
+        assertEquals(pose.heading(), Math.PI / 2, 0.01);
+        assertEquals(pose.x(), 0, 0.001);
+        assertEquals(pose.y(), 0, 0.001);
+    }
+
+    /**
+     * Test if the pose follows the simulated roomba, also with a low sensor update rate.
+     */
+    @Test
+    public void testSimulatedDrive() throws InterruptedException {
+        RoombaSimulator simulator = new RoombaSimulator();
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        RoombaOdometry odometry = new RoombaOdometry(1 / RoombaSimulator.COUNTS_PER_MM, RoombaSimulator.WHEEL_BASE, 16);
+        roomba.setOdometry(odometry);
+        roomba.startup();
+        roomba.updateSensors();
+
+        // Drive straight for 80 seconds, the encoder counts wrap around
+        roomba.driveDirect(500, 500);
+        for (int i = 0; i < 4; i++) {
+            simulator.advance(20000);
+            Thread.sleep(60);
+            roomba.updateSensors();
+        }
+        assertEquals(odometry.distance(), 40000, 1);
+        assertEquals(odometry.pose().x(), simulator.x(), 1);
+
+        // Drive a curve
+        roomba.driveDirect(200, 100);
+        for (int i = 0; i < 20; i++) {
+            simulator.advance(100);
+            Thread.sleep(60);
+            roomba.updateSensors();
+        }
+        RoombaPose pose = odometry.pose();
+        assertEquals(pose.x(), simulator.x(), 2);
+        assertEquals(pose.y(), simulator.y(), 2);
+        assertEquals(pose.heading(), simulator.heading(), 0.01);
+        roomba.disconnect();
+    }
+
+    /**
+     * Test if the reference counts are set by the first packet with encoder counts, sensor data
+     * received before it does not cause a jump of the pose.
+     */
+    @Test
+    public void testEncoderCountsReceivedLater() throws InterruptedException {
+        RoombaSimulator simulator = new RoombaSimulator();
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        RoombaOdometry odometry = new RoombaOdometry(1 / RoombaSimulator.COUNTS_PER_MM, RoombaSimulator.WHEEL_BASE, 16);
+        roomba.setOdometry(odometry);
+        roomba.startup();
+        roomba.updateSensors(new int[] { 7 });
+
+        // Drive 1000mm before the encoder counts are requested
+        roomba.driveDirect(500, 500);
+        simulator.advance(2000);
+        Thread.sleep(60);
+        roomba.updateSensors(new int[] { 7 });
+        Thread.sleep(60);
+        roomba.updateSensors(new int[] { 43, 44 });
+        assertEquals(odometry.distance(), 0, 1);
+
+        simulator.advance(1000);
+        Thread.sleep(60);
+        roomba.updateSensors(new int[] { 43, 44 });
+        assertEquals(odometry.distance(), 500, 1);
+        roomba.disconnect();
+    }
+}
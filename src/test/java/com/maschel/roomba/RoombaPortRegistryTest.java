@@ -0,0 +1,151 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaPortRegistry, uses a temporary directory as device directory.
+ */
+public class RoombaPortRegistryTest
+{
+    private static final Pattern PORT_NAMES = Pattern.compile("ttyUSB[0-9]+");
+
+    private Path directory;
+    private int scans = 0;
+    private RoombaPortRegistry registry;
+
+    private final RoombaPortRegistry.Scanner scanner = new RoombaPortRegistry.Scanner() {
+        public String[] scan() {
+            scans++;
+            List<String> ports = new ArrayList<String>();
+            for (String name: directory.toFile().list()) {
+                if (PORT_NAMES.matcher(name).matches())
+                    ports.add(directory.resolve(name).toString());
+            }
+            return ports.toArray(new String[ports.size()]);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("roomba-dev");
+        Files.createFile(directory.resolve("ttyUSB0"));
+        Files.createFile(directory.resolve("null"));
+    }
+
+    @After
+    public void tearDown() {
+        if (registry != null)
+            registry.close();
+        for (File file: directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    private String port(String name) {
+        return directory.resolve(name).toString();
+    }
+
+    /**
+     * Test if the ports are enumerated once, and if listing ports and checking existing ports
+     * does not enumerate the ports again.
+     */
+    @Test
+    public void testEnumeratedOnce() {
+        registry = new RoombaPortRegistry(scanner, directory, PORT_NAMES);
+        assertTrue(registry.isWatching());
+        assertEquals(Arrays.asList(registry.portList()), Arrays.asList(port("ttyUSB0")));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(registry.contains(port("ttyUSB0")));
+            registry.portList();
+        }
+        assertEquals(scans, 1);
+    }
+
+    /**
+     * Test if added and removed ports are detected by watching the directory.
+     */
+    @Test
+    public void testHotPlug() throws Exception {
+        registry = new RoombaPortRegistry(scanner, directory, PORT_NAMES);
+        final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        registry.addListener(new RoombaPortRegistry.Listener() {
+            public void portAdded(String portId) {
+                events.add("+" + portId);
+            }
+
+            public void portRemoved(String portId) {
+                events.add("-" + portId);
+            }
+        });
+
+        Files.createFile(directory.resolve("ttyUSB1"));
+        Files.createFile(directory.resolve("random"));
+        assertEquals(events.poll(10, TimeUnit.SECONDS), "+" + port("ttyUSB1"));
+        assertEquals(Arrays.asList(registry.portList()), Arrays.asList(port("ttyUSB0"), port("ttyUSB1")));
+
+        Files.delete(directory.resolve("ttyUSB0"));
+        assertEquals(events.poll(10, TimeUnit.SECONDS), "-" + port("ttyUSB0"));
+        assertFalse(registry.contains(port("ttyUSB0")));
+        assertEquals(scans, 2);
+    }
+
+    /**
+     * Test if an unknown port is looked up by enumerating the ports again when the directory
+     * is not watched.
+     */
+    @Test
+    public void testUnknownPortRescan() throws IOException {
+        registry = new RoombaPortRegistry(scanner, null, null);
+        assertFalse(registry.isWatching());
+        Files.createFile(directory.resolve("ttyUSB2"));
+        assertTrue(registry.contains(port("ttyUSB2")));
+        assertEquals(scans, 2);
+        assertFalse(registry.contains(port("ttyUSB3")));
+        assertEquals(scans, 3);
+    }
+}
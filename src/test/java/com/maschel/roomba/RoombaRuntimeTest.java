@@ -0,0 +1,130 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaRuntime, runs control loops of simulated roombas.
+ */
+public class RoombaRuntimeTest
+{
+    private static final int ROOMBAS = 200;
+
+    private RoombaRuntime runtime;
+
+    @Before
+    public void setUp() {
+        runtime = new RoombaRuntime();
+    }
+
+    @After
+    public void tearDown() {
+        runtime.close();
+    }
+
+    /**
+     * Test if virtual threads are used when available.
+     */
+    @Test
+    public void testVirtualThreads() {
+        assertEquals(runtime.isVirtual(), RoombaRuntime.isVirtualThreadsAvailable());
+        assertFalse(new RoombaRuntime(false).isVirtual());
+    }
+
+    /**
+     * Test if many control loops run concurrently, using blocking sleep and sensor waits.
+     */
+    @Test
+    public void testControlLoops() throws Exception {
+        final AtomicInteger completed = new AtomicInteger();
+        List<Future<?>> loops = new ArrayList<Future<?>>();
+        for (int i=0; i < ROOMBAS; i++) {
+            loops.add(runtime.start(new Runnable() {
+                public void run() {
+                    RoombaSimulator simulator = new RoombaSimulator();
+                    RoombaJSSC roomba = new RoombaJSSCTransport(simulator);
+                    roomba.connect("simulator");
+                    roomba.setBatchedWrites(runtime.executor());
+                    roomba.startup();
+                    for (int cycle = 0; cycle < 3; cycle++) {
+                        roomba.driveDirect(100, 100);
+                        roomba.sleep(60);
+                        roomba.updateSensors();
+                        if (!roomba.awaitSensorData(1000))
+                            return;
+                        simulator.advance(100);
+                    }
+                    roomba.setBatchedWrites(false);
+                    if (roomba.mode() == RoombaSimulator.MODE_SAFE && simulator.x() > 0)
+                        completed.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> loop: loops) {
+            loop.get();
+        }
+        assertEquals(completed.get(), ROOMBAS);
+        assertEquals(runtime.running(), 0);
+    }
+
+    /**
+     * Test if close interrupts a control loop that sleeps.
+     */
+    @Test
+    public void testClose() throws InterruptedException {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final RoombaJSSC roomba = new RoombaJSSCTransport(new RoombaSimulator());
+        runtime.start(new Runnable() {
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    roomba.sleep(10);
+                }
+                stopped.set(true);
+            }
+        });
+        Thread.sleep(50);
+        assertEquals(runtime.running(), 1);
+        runtime.close();
+        assertTrue("Control loop should stop when interrupted", stopped.get());
+        assertEquals(runtime.running(), 0);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the safety reflex of RoombaJSSC.
+ */
+public class RoombaSafetyReflexTest
+{
+    private RoombaSimulator simulator;
+    private RoombaJSSCTransport roomba;
+
+    @Before
+    public void setUp() {
+        simulator = new RoombaSimulator();
+        roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        roomba.start();
+        roomba.fullMode();
+        roomba.setSafetyReflex(RoombaSensorFlags.CLIFFS | RoombaSensorFlags.WHEEL_DROPS | RoombaSensorFlags.BUMPS);
+    }
+
+    @After
+    public void tearDown() {
+        roomba.disconnect();
+    }
+
+    /**
+     * Request all sensor data from the simulator, waiting for the minimum time between requests.
+     */
+    private void updateSensors() throws InterruptedException {
+        Thread.sleep(60);
+        roomba.updateSensors();
+        assertTrue(roomba.awaitSensorData(1000));
+    }
+
+    /**
+     * Wait until the simulated roomba stopped, without batched writes the stop is written by the scheduler.
+     */
+    private void awaitStopped() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while ((simulator.leftVelocity() != 0 || simulator.rightVelocity() != 0) &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Test if a cliff stops the roomba once, until the next drive command.
+     */
+    @Test
+    public void testCliffStop() throws InterruptedException {
+        roomba.driveDirect(-100, -100);
+        simulator.setSensor(9, 1);
+        updateSensors();
+        awaitStopped();
+        assertEquals(simulator.rightVelocity(), 0, 0.001);
+        assertEquals(roomba.safetyStops(), 1);
+
+        updateSensors();
+        assertEquals("The reflex should only stop a driving roomba", roomba.safetyStops(), 1);
+        roomba.drive(100, 32767);
+        updateSensors();
+        awaitStopped();
+        assertEquals(simulator.leftVelocity(), 0, 0.001);
+        assertEquals(roomba.safetyStops(), 2);
+    }
+
+    /**
+     * Test if a bump only stops the roomba while it drives forward.
+     */
+    @Test
+    public void testBumpStop() throws InterruptedException {
+        simulator.setSensor(7, 0x01);
+        roomba.driveDirect(-100, -100);
+        updateSensors();
+        assertEquals(simulator.rightVelocity(), -100, 0.001);
+        assertEquals(roomba.safetyStops(), 0);
+
+        roomba.driveDirect(100, 100);
+        updateSensors();
+        awaitStopped();
+        assertEquals(simulator.rightVelocity(), 0, 0.001);
+        assertEquals(roomba.safetyStops(), 1);
+    }
+
+    /**
+     * Test if the stop is written ahead of all queued commands, and if the queued drive command is dropped.
+     */
+    @Test
+    public void testStopAheadOfQueue() throws InterruptedException {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roomba.setBatchedWrites(new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        roomba.setCommandCoalescing(true);
+        roomba.driveDirect(100, 100);
+        roomba.stream(new int[] { 9 });
+        tasks.remove(0).run();
+        assertEquals(simulator.rightVelocity(), 100, 0.001);
+
+        roomba.driveDirect(200, 200);
+        roomba.fullMode();
+        simulator.setSensor(9, 1);
+        simulator.advance(15);
+        assertEquals(roomba.safetyStops(), 1);
+        long commands = simulator.commands();
+        tasks.remove(0).run();
+        assertEquals(simulator.rightVelocity(), 0, 0.001);
+        assertEquals("Only the stop and full mode commands should be written", simulator.commands(), commands + 2);
+        roomba.setBatchedWrites(false);
+    }
+
+    /**
+     * Test if the stop drops all queued drive commands when they are not coalesced.
+     */
+    @Test
+    public void testStopDropsQueuedDrives() throws InterruptedException {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        roomba.setBatchedWrites(new Executor() {
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        assertFalse(roomba.isCommandCoalescing());
+        roomba.driveDirect(100, 100);
+        roomba.stream(new int[] { 9 });
+        tasks.remove(0).run();
+
+        roomba.driveDirect(200, 200);
+        roomba.fullMode();
+        roomba.drive(300, 32767);
+        simulator.setSensor(9, 1);
+        simulator.advance(15);
+        assertEquals(roomba.safetyStops(), 1);
+        assertEquals(roomba.outboundQueueDepth(), 1);
+        long commands = simulator.commands();
+        tasks.remove(0).run();
+        assertEquals(simulator.rightVelocity(), 0, 0.001);
+        assertEquals("Only the stop and full mode commands should be written", simulator.commands(), commands + 2);
+        roomba.setBatchedWrites(false);
+    }
+
+    /**
+     * Test if setSafetyReflex only accepts cliffs, wheel drops and bumps.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetSafetyReflexConditions() {
+        roomba.setSafetyReflex(RoombaSensorFlags.BUTTONS);
+    }
+}
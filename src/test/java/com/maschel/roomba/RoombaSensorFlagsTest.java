@@ -0,0 +1,112 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSensorFlags.
+ */
+public class RoombaSensorFlagsTest
+{
+    /**
+     * Test if every boolean sensor value is packed in its own flag.
+     */
+    @Test
+    public void testPack() {
+        byte[] data = new byte[RoombaSensorFrame.SIZE];
+        assertEquals(RoombaSensorFlags.pack(data), 0);
+
+        data[RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET] = (byte)0xf9;
+        data[RoombaJSSC.SENSOR_CLIFF_FRONT_RIGHT_OFFSET] = 1;
+        data[RoombaJSSC.SENSOR_WHEEL_OVERCURRENT_OFFSET] = 0x10;
+        data[RoombaJSSC.SENSOR_BUTTONS_OFFSET] = (byte)0x80;
+        data[RoombaJSSC.SENSOR_CHARGING_SOURCES_OFFSET] = 0x2;
+        data[RoombaJSSC.SENSOR_STASIS] = 1;
+        data[RoombaJSSC.SENSOR_LIGHT_BUMPER_OFFSET] = 0x21;
+        long expect = RoombaSensorFlags.BUMP_RIGHT | RoombaSensorFlags.WHEEL_DROP_LEFT |
+                RoombaSensorFlags.CLIFF_FRONT_RIGHT | RoombaSensorFlags.WHEEL_OVERCURRENT_LEFT |
+                RoombaSensorFlags.BUTTON_CLOCK | RoombaSensorFlags.HOMEBASE_CHARGER | RoombaSensorFlags.STASIS |
+                RoombaSensorFlags.LIGHT_BUMPER_LEFT | RoombaSensorFlags.LIGHT_BUMPER_RIGHT;
+        assertEquals(RoombaSensorFlags.pack(data), expect);
+        assertEquals(RoombaSensorFlags.pack(ByteBuffer.wrap(data), 0), expect);
+    }
+
+    /**
+     * Test if the flags match the boolean getters of a sensor frame.
+     */
+    @Test
+    public void testFrameGetters() {
+        byte[] data = new byte[RoombaSensorFrame.SIZE];
+        RoombaSensorFrame frame = new RoombaSensorFrame(ByteBuffer.wrap(data));
+        for (int value = 0; value < 256; value++) {
+            Arrays.fill(data, (byte)value);
+            long flags = frame.sensorFlags();
+            assertEquals(frame.bumpLeft(), (flags & RoombaSensorFlags.BUMP_LEFT) != 0);
+            assertEquals(frame.wheelDropRight(), (flags & RoombaSensorFlags.WHEEL_DROP_RIGHT) != 0);
+            assertEquals(frame.cliffRight(), (flags & RoombaSensorFlags.CLIFF_RIGHT) != 0);
+            assertEquals(frame.mainBrushOvercurrent(), (flags & RoombaSensorFlags.MAIN_BRUSH_OVERCURRENT) != 0);
+            assertEquals(frame.buttonDayPressed(), (flags & RoombaSensorFlags.BUTTON_DAY) != 0);
+            assertEquals(frame.internalChargerAvailable(), (flags & RoombaSensorFlags.INTERNAL_CHARGER) != 0);
+            assertEquals(frame.songPlaying(), (flags & RoombaSensorFlags.SONG_PLAYING) != 0);
+            assertEquals(frame.lightBumperCenterRight(), (flags & RoombaSensorFlags.LIGHT_BUMPER_CENTER_RIGHT) != 0);
+            assertEquals(frame.safetyFault(), frame.bumpRight() || frame.bumpLeft() || frame.wheelDropRight() ||
+                    frame.wheelDropLeft() || frame.cliffLeft() || frame.cliffFrontLeft() ||
+                    frame.cliffFrontRight() || frame.cliffRight());
+        }
+    }
+
+    /**
+     * Test if the flags of the received sensor data are packed when the data is published.
+     */
+    @Test
+    public void testSensorFlags() {
+        RoombaSimulator simulator = new RoombaSimulator();
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        roomba.startup();
+        simulator.setSensor(7, 0x02);
+        simulator.setSensor(10, 1);
+        roomba.updateSensors();
+        assertTrue(roomba.awaitSensorData(1000));
+
+        long flags = roomba.sensorFlags();
+        assertEquals(flags & RoombaSensorFlags.SAFETY_FAULTS,
+                RoombaSensorFlags.BUMP_LEFT | RoombaSensorFlags.CLIFF_FRONT_LEFT);
+        assertTrue(roomba.safetyFault());
+        roomba.disconnect();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSensorFrame.
+ */
+public class RoombaSensorFrameTest
+{
+    /**
+     * Test if the frame values are read from the buffer, independent of the byte order of the buffer.
+     */
+    @Test
+    public void testValues() {
+        ByteBuffer buffer = ByteBuffer.allocate(RoombaSensorFrame.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(RoombaJSSC.SENSOR_BUMPS_WHEELDROPS_OFFSET, (byte)0x05);
+        buffer.put(RoombaJSSC.SENSOR_CLIFF_FRONT_LEFT_OFFSET, (byte)1);
+        buffer.put(RoombaJSSC.SENSOR_VOLTAGE_OFFSET, (byte)0x3e);
+        buffer.put(RoombaJSSC.SENSOR_VOLTAGE_OFFSET + 1, (byte)0x80);
+        buffer.put(RoombaJSSC.SENSOR_CURRENT_OFFSET, (byte)0xfe);
+        buffer.put(RoombaJSSC.SENSOR_CURRENT_OFFSET + 1, (byte)0x0c);
+        buffer.put(RoombaJSSC.SENSOR_TEMPERATURE_OFFSET, (byte)-5);
+
+        RoombaSensorFrame frame = new RoombaSensorFrame(buffer);
+        assertTrue(frame.bumpRight());
+        assertFalse(frame.bumpLeft());
+        assertTrue(frame.wheelDropRight());
+        assertTrue(frame.cliffFrontLeft());
+        assertTrue(frame.safetyFault());
+        assertEquals(frame.batteryVoltage(), 16000);
+        assertEquals(frame.batteryCurrent(), -500);
+        assertEquals(frame.batteryTemperature(), -5);
+    }
+
+    /**
+     * Test if a frame can be pointed at the next frame in a buffer.
+     */
+    @Test
+    public void testWrap() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * RoombaSensorFrame.SIZE);
+        buffer.put(RoombaSensorFrame.SIZE + RoombaJSSC.SENSOR_OI_MODE_OFFSET, (byte)3);
+
+        RoombaSensorFrame frame = new RoombaSensorFrame().wrap(buffer, 0);
+        assertEquals(frame.mode(), 0);
+        assertSame(frame.wrap(buffer, RoombaSensorFrame.SIZE), frame);
+        assertEquals(frame.offset(), RoombaSensorFrame.SIZE);
+        assertEquals(frame.mode(), 3);
+    }
+
+    /**
+     * Test if wrap validates that the buffer contains a complete frame.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapTooSmall() {
+        new RoombaSensorFrame().wrap(ByteBuffer.allocate(2 * RoombaSensorFrame.SIZE), RoombaSensorFrame.SIZE + 1);
+    }
+
+    /**
+     * Test if readSensorData copies the current sensor data of a roomba, and if the frame values
+     * match the values of the roomba.
+     */
+    @Test
+    public void testReadSensorData() throws InterruptedException {
+        RoombaSimulator simulator = new RoombaSimulator();
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        roomba.startup();
+        simulator.setSensor(7, 0x02);
+        roomba.updateSensors();
+        assertTrue(roomba.awaitSensorData(1000));
+
+        ByteBuffer buffer = ByteBuffer.allocate(RoombaSensorFrame.SIZE);
+        roomba.readSensorData(buffer);
+        assertEquals(buffer.position(), RoombaSensorFrame.SIZE);
+
+        RoombaSensorFrame frame = new RoombaSensorFrame().wrap(buffer, 0);
+        assertTrue(frame.bumpLeft());
+        assertEquals(frame.mode(), roomba.mode());
+        assertEquals(frame.batteryVoltage(), roomba.batteryVoltage());
+        assertEquals(frame.batteryCapacity(), roomba.batteryCapacity());
+        roomba.disconnect();
+    }
+}
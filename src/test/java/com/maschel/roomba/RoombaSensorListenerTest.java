@@ -0,0 +1,132 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the sensor listeners of RoombaJSSC.
+ */
+public class RoombaSensorListenerTest
+{
+    private RoombaSimulator simulator;
+    private RoombaJSSCTransport roomba;
+    private final List<Long> changes = new CopyOnWriteArrayList<Long>();
+    private final RoombaJSSC.SensorListener listener = new RoombaJSSC.SensorListener() {
+        public void sensorsChanged(RoombaJSSC roomba, long changed, RoombaSensorFrame frame) {
+            changes.add(changed);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        simulator = new RoombaSimulator();
+        roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+        roomba.startup();
+    }
+
+    @After
+    public void tearDown() {
+        roomba.disconnect();
+    }
+
+    /**
+     * Request all sensor data from the simulator, waiting for the minimum time between requests.
+     */
+    private void updateSensors() throws InterruptedException {
+        Thread.sleep(60);
+        roomba.updateSensors();
+        assertTrue(roomba.awaitSensorData(1000));
+    }
+
+    /**
+     * Test if a listener is only called when one of its sensors changed.
+     */
+    @Test
+    public void testBumpListener() throws InterruptedException {
+        roomba.addSensorListener(RoombaSensorFlags.BUMPS, listener);
+        updateSensors();
+        assertTrue(changes.isEmpty());
+
+        simulator.setSensor(7, 0x01);
+        updateSensors();
+        updateSensors();
+        simulator.setSensor(9, 1);
+        updateSensors();
+        simulator.setSensor(7, 0x00);
+        updateSensors();
+        assertEquals(changes.size(), 2);
+        assertEquals((long)changes.get(0), RoombaSensorFlags.BUMP_RIGHT);
+        assertEquals((long)changes.get(1), RoombaSensorFlags.BUMP_RIGHT);
+    }
+
+    /**
+     * Test if mode changes are reported, and if the listener gets the received frame.
+     */
+    @Test
+    public void testModeListener() throws InterruptedException {
+        final List<Integer> modes = new CopyOnWriteArrayList<Integer>();
+        roomba.addSensorListener(RoombaSensorFlags.MODE_CHANGED | RoombaSensorFlags.CLIFFS,
+                new RoombaJSSC.SensorListener() {
+            public void sensorsChanged(RoombaJSSC roomba, long changed, RoombaSensorFrame frame) {
+                changes.add(changed);
+                modes.add(frame.mode());
+            }
+        });
+        updateSensors();
+        roomba.fullMode();
+        updateSensors();
+        assertEquals(changes.size(), 2);
+        assertEquals((long)changes.get(1), RoombaSensorFlags.MODE_CHANGED);
+        assertEquals((int)modes.get(0), RoombaSimulator.MODE_SAFE);
+        assertEquals((int)modes.get(1), RoombaSimulator.MODE_FULL);
+    }
+
+    /**
+     * Test if a removed listener is no longer called.
+     */
+    @Test
+    public void testRemoveListener() throws InterruptedException {
+        roomba.addSensorListener(RoombaSensorFlags.BUMPS, listener);
+        roomba.removeSensorListener(listener);
+        simulator.setSensor(7, 0x02);
+        updateSensors();
+        assertTrue(changes.isEmpty());
+    }
+}
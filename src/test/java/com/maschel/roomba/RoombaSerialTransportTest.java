@@ -0,0 +1,172 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortException;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSerialTransport.
+ */
+public class RoombaSerialTransportTest extends RoombaJSSCTestSuite
+{
+    private final List<byte[]> received = new ArrayList<byte[]>();
+
+    private final RoombaTransport.Receiver receiver = new RoombaTransport.Receiver() {
+        public void received(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            received.add(bytes);
+        }
+    };
+
+    /**
+     * Test if the serial port is opened with the given baud rate and the transport listens for
+     * incoming data.
+     * @throws Exception
+     */
+    @Test
+    public void testOpen() throws Exception {
+        RoombaSerialTransport transport = new RoombaSerialTransport(RoombaJSSCSerial.BAUDRATE_19200);
+        transport.open(SERIAL_PORT, receiver);
+        assertTrue(transport.isOpen());
+        Mockito.verify(serialPort).setParams(RoombaJSSCSerial.BAUDRATE_19200,
+                SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        Mockito.verify(serialPort).setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
+        Mockito.verify(serialPort).addEventListener(transport);
+    }
+
+    /**
+     * Test if opening an open transport closes the port that was opened before.
+     * @throws Exception
+     */
+    @Test
+    public void testReopen() throws Exception {
+        RoombaSerialTransport transport = new RoombaSerialTransport();
+        transport.open(SERIAL_PORT, receiver);
+        Mockito.verify(serialPort, Mockito.never()).closePort();
+        transport.open(SERIAL_PORT, receiver);
+        Mockito.verify(serialPort, Mockito.times(1)).closePort();
+        Mockito.verify(serialPort, Mockito.times(2)).openPort();
+        assertTrue(transport.isOpen());
+    }
+
+    /**
+     * Test if open throws an IOException when the serial port can not be opened.
+     * @throws SerialPortException
+     */
+    @Test
+    public void testOpenFailure() throws SerialPortException {
+        Mockito.when(serialPort.openPort()).thenThrow(mockSerialPortException);
+        RoombaSerialTransport transport = new RoombaSerialTransport();
+        try {
+            transport.open(SERIAL_PORT, receiver);
+            fail("open() should throw IOException when the port can not be opened");
+        } catch (IOException ex) {
+            // Expected
+        }
+        assertFalse(transport.isOpen());
+    }
+
+    /**
+     * Test if all remaining bytes of the buffer are written to the serial port.
+     * @throws Exception
+     */
+    @Test
+    public void testWrite() throws Exception {
+        RoombaSerialTransport transport = new RoombaSerialTransport();
+        transport.open(SERIAL_PORT, receiver);
+        ByteBuffer src = ByteBuffer.wrap(new byte[] { 0, (byte)128, (byte)131 });
+        src.position(1);
+        assertEquals(transport.write(src), 2);
+        assertFalse(src.hasRemaining());
+        Mockito.verify(serialPort).writeBytes(Matchers.eq(new byte[] { (byte)128, (byte)131 }));
+
+        Mockito.when(serialPort.writeBytes(Matchers.any(byte[].class))).thenThrow(mockSerialPortException);
+        try {
+            transport.write(ByteBuffer.wrap(new byte[] { (byte)128 }));
+            fail("write() should throw IOException when the write fails");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test if only the bytes reported by a received characters event are read and passed to the
+     * receiver, and if other events are ignored.
+     * @throws Exception
+     */
+    @Test
+    public void testSerialEvent() throws Exception {
+        RoombaSerialTransport transport = new RoombaSerialTransport();
+        transport.open(SERIAL_PORT, receiver);
+        byte[] bytes = { 1, 2, 3 };
+        Mockito.when(serialPort.readBytes(3)).thenReturn(bytes);
+        transport.serialEvent(new SerialPortEvent(SERIAL_PORT, SerialPort.MASK_RXCHAR, 3));
+        assertEquals(received.size(), 1);
+        assertArrayEquals(received.get(0), bytes);
+
+        transport.serialEvent(new SerialPortEvent(SERIAL_PORT, SerialPort.MASK_CTS, 1));
+        transport.serialEvent(new SerialPortEvent(SERIAL_PORT, SerialPort.MASK_RXCHAR, 0));
+        assertEquals(received.size(), 1);
+        Mockito.verify(serialPort, Mockito.times(1)).readBytes(Matchers.anyInt());
+    }
+
+    /**
+     * Test if close closes the serial port and writes fail afterwards.
+     * @throws Exception
+     */
+    @Test
+    public void testClose() throws Exception {
+        RoombaSerialTransport transport = new RoombaSerialTransport();
+        transport.open(SERIAL_PORT, receiver);
+        transport.close();
+        assertFalse(transport.isOpen());
+        Mockito.verify(serialPort).closePort();
+        try {
+            transport.write(ByteBuffer.wrap(new byte[] { (byte)128 }));
+            fail("write() should throw IOException after close()");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSimulator.
+ */
+public class RoombaSimulatorTest
+{
+    private RoombaSimulator simulator;
+    private RoombaJSSCTransport roomba;
+
+    @Before
+    public void setUp() {
+        simulator = new RoombaSimulator();
+        roomba = new RoombaJSSCTransport(simulator);
+        assertTrue(roomba.connect("simulator"));
+    }
+
+    /**
+     * Request all sensor data from the simulator, waiting for the minimum time between requests.
+     */
+    private void updateSensors() throws InterruptedException {
+        Thread.sleep(60);
+        roomba.updateSensors();
+        assertTrue(roomba.awaitSensorData(0));
+    }
+
+    /**
+     * Test if the OI mode follows the mode commands.
+     */
+    @Test
+    public void testModes() throws InterruptedException {
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_OFF);
+        roomba.startup();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+        roomba.fullMode();
+        updateSensors();
+        assertEquals(roomba.mode(), RoombaSimulator.MODE_FULL);
+        roomba.clean();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_PASSIVE);
+        roomba.stop();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_OFF);
+    }
+
+    /**
+     * Test if multi-byte commands are read with their full size: no trailing byte may be run as a
+     * command of its own (e.g. a minute of 7 as Reset).
+     */
+    @Test
+    public void testCommandSizes() {
+        roomba.startup();
+        long commands = simulator.commands();
+        roomba.schedule(false, false, false, false, false, false, true,
+                0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 10, 7);
+        roomba.setDayTime(6, 10, 7);
+        roomba.digitLedsAscii('R', 'O', 'O', 'M');
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+        assertEquals(simulator.commands(), commands + 3);
+    }
+
+    /**
+     * Test if the simulated sensor data is valid and contains the simulated battery values.
+     */
+    @Test
+    public void testSensorData() throws InterruptedException {
+        roomba.start();
+        updateSensors();
+        assertTrue(RoombaJSSC.isValidSensorData(roomba.currentSensorData));
+        assertEquals(roomba.batteryVoltage(), 16000);
+        assertEquals(roomba.batteryCapacity(), 2696);
+
+        simulator.setSensor(7, 0x01);
+        updateSensors();
+        assertTrue(roomba.bumpRight());
+    }
+
+    /**
+     * Test if driving straight updates the distance, encoder counts and position, and if the
+     * distance is reset after it is sent.
+     */
+    @Test
+    public void testDriveStraight() throws InterruptedException {
+        roomba.startup();
+        roomba.driveDirect(100, 100);
+        simulator.advance(1000);
+        updateSensors();
+        assertEquals(roomba.distanceTraveled(), 100);
+        assertEquals(roomba.requestedVelocityRight(), 100);
+        assertEquals(roomba.encoderCountsLeft(), (int)(100 * RoombaSimulator.COUNTS_PER_MM));
+        assertEquals(simulator.x(), 100, 0.001);
+        assertEquals(simulator.y(), 0, 0.001);
+
+        updateSensors();
+        assertEquals("Distance should be reset after it is sent", roomba.distanceTraveled(), 0);
+    }
+
+    /**
+     * Test if turning in place updates the angle and heading.
+     */
+    @Test
+    public void testTurnInPlace() throws InterruptedException {
+        roomba.startup();
+        // Counter-clockwise at 100mm/s: 200/235 rad/s, 90 degrees in 1846ms
+        roomba.drive(100, 1);
+        simulator.advance(1846);
+        roomba.driveDirect(0, 0);
+        updateSensors();
+        assertEquals(roomba.angleTurned(), 90);
+        assertEquals(Math.toDegrees(simulator.heading()), 90, 0.1);
+        assertEquals(simulator.x(), 0, 0.001);
+    }
+
+    /**
+     * Test if actuator commands are ignored in passive mode and if the roomba stops in safe mode
+     * on a wheel drop.
+     */
+    @Test
+    public void testSafety() {
+        roomba.start();
+        roomba.driveDirect(100, 100);
+        assertEquals("Drive commands should be ignored in passive mode", simulator.rightVelocity(), 0, 0);
+
+        roomba.safeMode();
+        roomba.driveDirect(100, 100);
+        assertEquals(simulator.rightVelocity(), 100, 0);
+        simulator.setSensor(7, 0x04);
+        assertEquals(simulator.rightVelocity(), 0, 0);
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_PASSIVE);
+    }
+
+    /**
+     * Test if stream packets are sent every 15ms of simulated time.
+     */
+    @Test
+    public void testStream() {
+        roomba.start();
+        roomba.stream();
+        simulator.advance(150);
+        assertEquals(roomba.receivedPackets(), 10);
+        assertEquals(roomba.discardedPackets(), 0);
+
+        roomba.pauseStream();
+        simulator.advance(150);
+        assertEquals(roomba.receivedPackets(), 10);
+
+        roomba.resumeStream();
+        simulator.advance(30);
+        assertEquals(roomba.receivedPackets(), 12);
+    }
+
+    /**
+     * Test if resumeStream is ignored when no stream is started, or after the OI is stopped.
+     */
+    @Test
+    public void testResumeStreamWithoutStream() {
+        roomba.start();
+        roomba.resumeStream();
+        assertFalse(roomba.isStreaming());
+
+        roomba.stream();
+        roomba.pauseStream();
+        roomba.stop();
+        roomba.resumeStream();
+        assertFalse(roomba.isStreaming());
+    }
+
+    /**
+     * Test if a song is playing for its duration.
+     */
+    @Test
+    public void testPlaySong() {
+        roomba.startup();
+        // 64/64 second
+        roomba.send(new byte[] { (byte)140, 0, 1, 69, 64 });
+        roomba.play(0);
+        assertTrue(simulator.songPlaying());
+        simulator.advance(999);
+        assertTrue(simulator.songPlaying());
+        simulator.advance(1);
+        assertFalse(simulator.songPlaying());
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSocketTransport and RoombaSocketSelector, uses a local server socket
+ * as stand-in for a serial-to-network bridge.
+ */
+public class RoombaSocketTransportTest
+{
+    private static final int CONNECTIONS = 16;
+
+    private ServerSocket server;
+    private RoombaSocketSelector selector;
+    private String portId;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, CONNECTIONS, InetAddress.getLoopbackAddress());
+        selector = new RoombaSocketSelector();
+        portId = "127.0.0.1:" + server.getLocalPort();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        selector.close();
+        server.close();
+    }
+
+    /**
+     * Test if a single selector receives the sensor data of multiple connections, and if
+     * commands are written to the connection.
+     */
+    @Test
+    public void testMultipleConnections() throws IOException {
+        RoombaJSSCTransport[] roombas = new RoombaJSSCTransport[CONNECTIONS];
+        Socket[] bridges = new Socket[CONNECTIONS];
+        for (int i=0; i < CONNECTIONS; i++) {
+            roombas[i] = new RoombaJSSCTransport(new RoombaSocketTransport(selector, 1000));
+            assertTrue("connect() should return True on successful connect", roombas[i].connect(portId));
+            bridges[i] = server.accept();
+        }
+        for (int i=0; i < CONNECTIONS; i++) {
+            byte[] packet = new byte[80];
+            Arrays.fill(packet, (byte)i);
+            // Send in two parts to simulate serial input delay
+            bridges[i].getOutputStream().write(packet, 0, 30);
+            bridges[i].getOutputStream().write(packet, 30, 50);
+        }
+        for (int i=0; i < CONNECTIONS; i++) {
+            assertTrue("Sensor data should be received", roombas[i].awaitSensorData(1000));
+            assertEquals(roombas[i].currentSensorData[0], (byte)i);
+            assertEquals(roombas[i].currentSensorData[79], (byte)i);
+        }
+
+        roombas[0].start();
+        assertEquals(bridges[0].getInputStream().read(), 128);
+
+        for (int i=0; i < CONNECTIONS; i++) {
+            roombas[i].disconnect();
+            assertEquals("Connection should be closed on disconnect", bridges[i].getInputStream().read(), -1);
+            bridges[i].close();
+        }
+    }
+
+    /**
+     * Test if connecting fails on an invalid port or if no connection can be made.
+     */
+    @Test
+    public void testConnectFailure() throws IOException {
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(new RoombaSocketTransport(selector, 1000));
+        assertFalse("connect() should return False if the port is not formatted as host:port", roomba.connect("localhost"));
+        ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        int closedPort = closed.getLocalPort();
+        closed.close();
+        assertFalse("connect() should return False if the connection is refused", roomba.connect("127.0.0.1:" + closedPort));
+    }
+
+    /**
+     * Test if sending fails after the bridge closed the connection.
+     */
+    @Test
+    public void testRemoteClose() throws Exception {
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(new RoombaSocketTransport(selector, 1000));
+        assertTrue(roomba.connect(portId));
+        server.accept().close();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (roomba.send(128) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("send() should return False after the connection is closed", roomba.send(128));
+    }
+
+    /**
+     * Test if a failing receiver only closes its own connection.
+     */
+    @Test
+    public void testReceiverFailure() throws Exception {
+        RoombaSocketTransport failing = new RoombaSocketTransport(selector, 1000);
+        failing.open(portId, new RoombaTransport.Receiver() {
+            public void received(ByteBuffer data) {
+                throw new IllegalStateException("Receiver failure");
+            }
+        });
+        Socket failingBridge = server.accept();
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(new RoombaSocketTransport(selector, 1000));
+        assertTrue(roomba.connect(portId));
+        Socket bridge = server.accept();
+
+        failingBridge.getOutputStream().write(1);
+        assertEquals("Connection should be closed after the receiver failed", failingBridge.getInputStream().read(), -1);
+        assertFalse(failing.isOpen());
+
+        bridge.getOutputStream().write(new byte[80]);
+        assertTrue("Other connections should still receive data", roomba.awaitSensorData(1000));
+        roomba.disconnect();
+        failingBridge.close();
+        bridge.close();
+    }
+
+    /**
+     * Test if a write waits for a full send buffer to drain and writes all bytes.
+     */
+    @Test
+    public void testFullSendBuffer() throws Exception {
+        final RoombaSocketTransport transport = new RoombaSocketTransport(selector, 1000);
+        transport.open(portId, new RoombaTransport.Receiver() {
+            public void received(ByteBuffer data) {
+            }
+        });
+        Socket bridge = server.accept();
+        final int size = 4 * 1024 * 1024;
+        final int[] written = new int[1];
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    written[0] = transport.write(ByteBuffer.allocate(size));
+                } catch (IOException ex) {
+                    written[0] = -1;
+                }
+            }
+        });
+        writer.start();
+        // Let the send buffer fill up before reading
+        Thread.sleep(100);
+        byte[] buffer = new byte[8192];
+        int read = 0;
+        while (read < size) {
+            int count = bridge.getInputStream().read(buffer);
+            assertTrue("Connection should not be closed", count >= 0);
+            read += count;
+        }
+        writer.join(1000);
+        assertEquals(written[0], size);
+        transport.close();
+        bridge.close();
+    }
+
+    /**
+     * Test if concurrent writes that do not fit in the send buffer are not interleaved.
+     */
+    @Test
+    public void testConcurrentPartialWrites() throws Exception {
+        final RoombaSocketTransport transport = new RoombaSocketTransport(selector, 1000);
+        transport.open(portId, new RoombaTransport.Receiver() {
+            public void received(ByteBuffer data) {
+            }
+        });
+        Socket bridge = server.accept();
+        final int size = 2 * 1024 * 1024;
+        Thread[] writers = new Thread[2];
+        for (int i=0; i < writers.length; i++) {
+            final byte value = (byte)(i + 1);
+            writers[i] = new Thread(new Runnable() {
+                public void run() {
+                    byte[] bytes = new byte[size];
+                    Arrays.fill(bytes, value);
+                    try {
+                        transport.write(ByteBuffer.wrap(bytes));
+                    } catch (IOException ex) {
+                        // Detected by the reader
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        byte[] buffer = new byte[8192];
+        byte first = 0;
+        int read = 0;
+        while (read < size * 2) {
+            int count = bridge.getInputStream().read(buffer);
+            assertTrue("Connection should not be closed", count >= 0);
+            for (int i=0; i < count; i++, read++) {
+                if (read == 0)
+                    first = buffer[i];
+                // The first write is completely received before the second
+                byte expected = read < size ? first : (byte)(3 - first);
+                assertEquals(buffer[i], expected);
+            }
+        }
+        for (Thread writer: writers) {
+            writer.join(1000);
+        }
+        transport.close();
+        bridge.close();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.maschel.roomba;
+
+import com.maschel.roomba.song.RoombaNote;
+import com.maschel.roomba.song.RoombaNoteDuration;
+import com.maschel.roomba.song.RoombaSongNote;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaSupervisor, uses a simulated roomba.
+ */
+public class RoombaSupervisorTest
+{
+    private RoombaSimulator simulator;
+    private RoombaJSSC roomba;
+    private RoombaSupervisor supervisor;
+
+    @Before
+    public void setUp() {
+        simulator = new RoombaSimulator();
+        roomba = new RoombaJSSCTransport(simulator);
+        supervisor = new RoombaSupervisor(roomba, "simulator");
+        supervisor.setSensorTimeout(100);
+        supervisor.setReconnectDelay(10, 100);
+        assertTrue(supervisor.connect());
+        assertTrue(supervisor.isConnected());
+    }
+
+    @After
+    public void tearDown() {
+        supervisor.close();
+    }
+
+    /**
+     * Simulate a reset of the roomba (power loss) and a lost connection.
+     */
+    private void resetConnection() {
+        // Sent as raw bytes, so the OI state of the roomba is not changed
+        assertTrue(roomba.send(new byte[] { 7 }));
+        simulator.close();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_OFF);
+    }
+
+    private void awaitReconnect() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (supervisor.reconnects() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("Connection should be restored", supervisor.reconnects() > 0);
+        assertTrue(supervisor.isConnected());
+        assertTrue(simulator.isOpen());
+    }
+
+    /**
+     * Test if a failed write is detected, and if the OI mode and songs are restored after reconnecting.
+     */
+    @Test
+    public void testReconnectOnWriteFailure() throws InterruptedException {
+        roomba.startup();
+        roomba.song(0, new RoombaSongNote[] { new RoombaSongNote(RoombaNote.A4, RoombaNoteDuration.QuarterNote) },
+                120);
+        resetConnection();
+
+        roomba.driveDirect(100, 100);
+        assertEquals(roomba.sendFailures(), 1);
+        awaitReconnect();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+
+        roomba.play(0);
+        assertTrue("Song should be uploaded again", simulator.songPlaying());
+        roomba.driveDirect(100, 100);
+        assertEquals(simulator.rightVelocity(), 100, 0);
+    }
+
+    /**
+     * Test if the state is restored through the command writer when batched writes are enabled.
+     */
+    @Test
+    public void testReconnectBatched() throws InterruptedException {
+        roomba.setBatchedWrites(true);
+        roomba.startup();
+        resetConnection();
+
+        roomba.driveDirect(100, 100);
+        awaitReconnect();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (simulator.mode() != RoombaSimulator.MODE_SAFE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+        roomba.setBatchedWrites(false);
+    }
+
+    /**
+     * Test if a silent roomba is detected while streaming, and if the stream is restored.
+     */
+    @Test
+    public void testReconnectOnSensorSilence() throws InterruptedException {
+        roomba.start();
+        roomba.fullMode();
+        roomba.stream();
+        simulator.advance(15);
+        assertEquals(roomba.receivedPackets(), 1);
+
+        // The simulator does not advance, so no stream packets are sent
+        awaitReconnect();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_FULL);
+        assertTrue(roomba.isStreaming());
+        simulator.advance(15);
+        assertEquals("Stream should be restored", roomba.receivedPackets(), 2);
+    }
+
+    /**
+     * Test if the connection is closed when the port is removed, and restored as soon as the
+     * port is added again.
+     */
+    @Test
+    public void testPortHotPlug() throws InterruptedException {
+        final String[][] ports = { { "simulator" } };
+        RoombaPortRegistry registry = new RoombaPortRegistry(new RoombaPortRegistry.Scanner() {
+            public String[] scan() {
+                return ports[0];
+            }
+        }, null, null);
+        supervisor.setPortRegistry(registry);
+        supervisor.setReconnectDelay(10000, 10000);
+        roomba.startup();
+
+        ports[0] = new String[] {};
+        registry.refresh();
+        assertFalse(supervisor.isConnected());
+        assertFalse(simulator.isOpen());
+
+        ports[0] = new String[] { "simulator" };
+        registry.refresh();
+        awaitReconnect();
+        assertEquals(simulator.mode(), RoombaSimulator.MODE_SAFE);
+    }
+
+    /**
+     * Test if an unanswered sensor data request is not detected as silence after a reconnect.
+     */
+    @Test
+    public void testNoSilenceWhileIdle() throws InterruptedException {
+        roomba.start();
+        Thread.sleep(250);
+        assertEquals(supervisor.reconnects(), 0);
+        assertEquals(roomba.sendFailures(), 0);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  roombajssc
+ *
+ *  MIT License
+ *
+ *  Copyright (c) 2016 Geoffrey Mastenbroek, geoffrey@maschel.com
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ *  obtaining a copy of this software and associated documentation
+ *  files (the "Software"), to deal in the Software without
+ *  restriction, including without limitation the rights to use,
+ *  copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following
+ *  conditions:
+ *
+ *  The above copyright notice and this permission notice shall be
+ *  included in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *  OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package com.maschel.roomba;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for RoombaTtyTransport, uses a named pipe (FIFO) as loopback tty.
+ */
+public class RoombaTtyTransportTest
+{
+    private File fifo;
+
+    /**
+     * Create a named pipe, skip the tests if this is not supported.
+     */
+    @Before
+    public void createFifo() throws Exception {
+        fifo = File.createTempFile("roomba", ".tty");
+        assertTrue(fifo.delete());
+        int exitCode;
+        try {
+            exitCode = new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        Assume.assumeTrue("mkfifo is not available", exitCode == 0);
+    }
+
+    @After
+    public void deleteFifo() {
+        fifo.delete();
+    }
+
+    /**
+     * Tty transport that does not configure the (FIFO) tty.
+     */
+    static class LoopbackTransport extends RoombaTtyTransport {
+        LoopbackTransport(ThreadFactory threadFactory) {
+            super(RoombaJSSCSerial.BAUDRATE_115200, threadFactory);
+        }
+
+        @Override
+        void configure(String portId) {}
+    }
+
+    /**
+     * Test if data written to the tty is read by the reader thread and decoded as sensor data,
+     * and if the reader thread stops on disconnect.
+     */
+    @Test
+    public void testLoopback() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        final Thread[] reader = new Thread[1];
+        RoombaTtyTransport transport = new LoopbackTransport(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                threads.incrementAndGet();
+                reader[0] = new Thread(runnable);
+                return reader[0];
+            }
+        });
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(transport);
+        assertTrue(roomba.connect(fifo.getPath()));
+        assertTrue(transport.isOpen());
+        assertEquals("Reader thread should be created using the thread factory", threads.get(), 1);
+
+        byte[] packet = new byte[80];
+        for (int i=0; i < packet.length; i++) {
+            packet[i] = (byte)(i + 1);
+        }
+        assertTrue(roomba.send(packet));
+        assertTrue("Sensor data should be received", roomba.awaitSensorData(1000));
+        assertArrayEquals(roomba.currentSensorData, packet);
+
+        roomba.disconnect();
+        assertFalse(transport.isOpen());
+        reader[0].join(1000);
+        assertFalse("Reader thread should stop on disconnect", reader[0].isAlive());
+    }
+
+    /**
+     * Test if opening a non tty fails.
+     */
+    @Test
+    public void testConfigureNonTty() {
+        RoombaJSSCTransport roomba = new RoombaJSSCTransport(new RoombaTtyTransport());
+        assertFalse("connect() should return False if the tty can not be configured", roomba.connect(fifo.getPath()));
+    }
+}